@@ -0,0 +1,34 @@
+package com.example.androidkit;
+
+import android.util.Base64;
+import android.util.Base64InputStream;
+import android.util.Base64OutputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 基于android.util.Base64的实现，所有Android版本都可用
+ */
+final class AndroidBase64Engine implements Base64Engine {
+    // Android端统一使用的读写管线
+    static final StoragePipeline PIPELINE = new StoragePipeline(new AndroidBase64Engine());
+
+    private AndroidBase64Engine() {
+    }
+
+    @Override
+    public OutputStream wrapOutput(OutputStream out) {
+        return new Base64OutputStream(out, Base64.DEFAULT);
+    }
+
+    @Override
+    public InputStream wrapInput(InputStream in) {
+        return new Base64InputStream(in, Base64.DEFAULT);
+    }
+
+    @Override
+    public byte[] decode(byte[] data, int offset, int length) {
+        return Base64.decode(data, offset, length, Base64.DEFAULT);
+    }
+}
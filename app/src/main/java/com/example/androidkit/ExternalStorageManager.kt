@@ -1,21 +1,23 @@
 package com.example.androidkit
 
-import android.content.ContentUris
 import android.content.ContentValues
 import android.content.Context
+import android.net.Uri
 import android.os.Build
 import android.os.Environment
 import android.provider.MediaStore
-import android.util.Base64
 import android.util.Log
-import java.io.BufferedReader
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+import kotlinx.coroutines.withContext
 import java.io.File
-import java.io.FileInputStream
 import java.io.FileOutputStream
 import java.io.IOException
-import java.io.InputStreamReader
-import java.io.OutputStreamWriter
-import java.nio.charset.StandardCharsets
 
 /**
  * 管理外部存储的工具类，用于在应用卸载后仍能保留数据
@@ -27,6 +29,71 @@ object ExternalStorageManager {
     private const val FILE_NAME_ANDROID10 = ".sysdata" // Android 10及以下
     private const val FILE_NAME_ANDROID11 = "sysdata" // Android 11+
 
+    /**
+     * 保存时使用的编码器，null表示不写文件头的旧格式，读取时总是按文件头自动识别
+     */
+    @Volatile
+    var payloadCodec: PayloadCodec? = null
+
+    /**
+     * 保存时是否使用二进制格式，不经过Base64，旧版本应用无法读取，默认关闭
+     */
+    @Volatile
+    var binaryFormat: Boolean = false
+
+    // 与ExternalStorageUtils共用存储I/O线程池，保证读写串行
+    private val ioDispatcher: CoroutineDispatcher by lazy { StorageExecutors.io().asCoroutineDispatcher() }
+
+    /**
+     * 挂起版保存，在存储I/O线程执行，可在主线程协程中直接调用
+     */
+    suspend fun saveString(context: Context, data: String?): Boolean {
+        val appContext = context.applicationContext
+        return withContext(ioDispatcher) { saveStringToExternalStorage(appContext, data) }
+    }
+
+    /**
+     * 挂起版读取，在存储I/O线程执行，可在主线程协程中直接调用
+     */
+    suspend fun readString(context: Context): String? {
+        val appContext = context.applicationContext
+        return withContext(ioDispatcher) { readStringFromExternalStorage(appContext) }
+    }
+
+    /**
+     * 以Flow形式读取，每次collect在存储I/O线程读取一次并发射结果
+     */
+    fun readStringFlow(context: Context): Flow<String?> {
+        val appContext = context.applicationContext
+        return flow { emit(readStringFromExternalStorage(appContext)) }.flowOn(ioDispatcher)
+    }
+
+    /**
+     * 以Flow形式监听保存内容，collect后先发射当前值，之后每次内容变化发射新值
+     * 多次变化合并检查，内容未变化时不发射，取消collect时停止监听
+     */
+    fun observe(context: Context): Flow<String?> = callbackFlow {
+        val observer = ExternalStorageUtils.observe(context) { value -> trySend(value) }
+        awaitClose { observer.stop() }
+    }
+
+    /**
+     * 清理MediaStore中重复的数据文件行，例如旧版本每次保存都插入新行留下的"sysdata (1)"
+     * 每个保存位置只保留最新的一行，其余批量删除，返回删除的行数，会执行I/O，不要在主线程调用
+     */
+    fun compactDuplicates(context: Context): Int {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return 0
+        return MediaStoreCompactor.compact(context.applicationContext)
+    }
+
+    /**
+     * 挂起版重复行清理，在存储I/O线程执行
+     */
+    suspend fun compact(context: Context): Int {
+        val appContext = context.applicationContext
+        return withContext(ioDispatcher) { compactDuplicates(appContext) }
+    }
+
     /**
      * 保存字符串到外部存储，兼容所有Android主流版本，内容Base64编码，路径高度隐蔽
      */
@@ -35,13 +102,24 @@ object ExternalStorageManager {
             Log.e(TAG, "Cannot save null data")
             return false
         }
-        val encoded = Base64.encodeToString(data.toByteArray(StandardCharsets.UTF_8), Base64.DEFAULT)
+        val payload = StoragePipeline.stringWriter(data)
+        // 与ExternalStorageUtils共用同一个锁，读取不会看到写了一半的文件
+        val lock = ExternalStorageUtils.lock(context)
+        lock.lockWrite()
+        try {
+            return savePayload(context, payload)
+        } finally {
+            lock.unlockWrite()
+        }
+    }
+
+    private fun savePayload(context: Context, payload: PayloadWriter): Boolean {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
             // Android 11+，用MediaStore写入Documents/Android/syskit/sysdata
-            val ok = saveStringToMediaStoreSyskitDir(context, encoded)
+            val ok = saveStringToMediaStoreSyskitDir(context, payload)
             if (ok) return true
             // 回退普通Documents目录
-            return saveStringToMediaStoreDocuments(context, encoded)
+            return saveStringToMediaStoreDocuments(context, payload)
         } else {
             // Android 10及以下，直接写入根目录/Android/syskit/.sysdata
             val dir = File(Environment.getExternalStorageDirectory(), HIDDEN_DIR)
@@ -52,12 +130,11 @@ object ExternalStorageManager {
             val file = File(dir, FILE_NAME_ANDROID10)
             return try {
                 FileOutputStream(file).use { fos ->
-                    OutputStreamWriter(fos, StandardCharsets.UTF_8).use { writer ->
-                        writer.write(encoded)
-                        writer.flush()
+                    AndroidBase64Engine.PIPELINE.writeStored(fos, binaryFormat, payloadCodec, StorageFormat.UNKNOWN_LENGTH, payload)
+                    if (StorageDiagnostics.summary()) {
                         Log.d(TAG, "Saved to hidden dir: ${file.absolutePath}")
-                        true
                     }
+                    true
                 }
             } catch (e: IOException) {
                 Log.e(TAG, "Error saving to hidden dir", e)
@@ -68,143 +145,74 @@ object ExternalStorageManager {
 
     /**
      * 读取外部存储的字符串，自动Base64解码，兼容所有Android主流版本
+     * 同时探测本类和ExternalStorageUtils使用过的全部位置，返回最新的有效内容
      */
     fun readStringFromExternalStorage(context: Context): String? {
-        var encoded: String? = null
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            // Android 11+，查Documents/Android/syskit/sysdata，否则查Documents/sysdata
-            encoded = readStringFromMediaStoreSyskitDir(context)
-            if (encoded != null) return decodeBase64(encoded)
-            encoded = readStringFromMediaStoreDocuments(context)
-            return encoded?.let { decodeBase64(it) }
-        } else {
-            val dir = File(Environment.getExternalStorageDirectory(), HIDDEN_DIR)
-            val file = File(dir, FILE_NAME_ANDROID10)
-            if (!file.exists()) {
-                Log.e(TAG, "Hidden file does not exist: ${file.absolutePath}")
-                return null
-            }
-            return try {
-                FileInputStream(file).use { fis ->
-                    InputStreamReader(fis, StandardCharsets.UTF_8).use { isr ->
-                        BufferedReader(isr).use { reader ->
-                            val sb = StringBuilder()
-                            var line: String?
-                            while (reader.readLine().also { line = it } != null) {
-                                sb.append(line).append("\n")
-                            }
-                            if (sb.isNotEmpty()) sb.setLength(sb.length - 1)
-                            decodeBase64(sb.toString())
-                        }
-                    }
-                }
-            } catch (e: IOException) {
-                Log.e(TAG, "Error reading from hidden dir", e)
-                null
-            }
-        }
+        return StorageLocationResolver.resolve(context)?.value
+    }
+
+    /**
+     * 挂起版位置探测，结果包含内容和胜出的位置
+     */
+    suspend fun resolve(context: Context): StorageLocationResolver.Result? {
+        val appContext = context.applicationContext
+        return withContext(ioDispatcher) { StorageLocationResolver.resolve(appContext) }
     }
 
-    // Android 11+专用 MediaStore 写入/读取
-    private fun saveStringToMediaStoreSyskitDir(context: Context, encoded: String): Boolean {
+    // Android 11+专用 MediaStore 写入
+    private fun saveStringToMediaStoreSyskitDir(context: Context, payload: PayloadWriter): Boolean {
         return try {
-            val resolver = context.contentResolver
-            val values = ContentValues().apply {
-                put(MediaStore.Files.FileColumns.DISPLAY_NAME, FILE_NAME_ANDROID11)
-                put(MediaStore.Files.FileColumns.MIME_TYPE, "application/octet-stream")
-                put(MediaStore.Files.FileColumns.RELATIVE_PATH, "Documents/$HIDDEN_DIR/")
+            upsertToMediaStore(context, "Documents/$HIDDEN_DIR/", payload).also { saved ->
+                if (saved && StorageDiagnostics.summary()) {
+                    Log.d(TAG, "Saved to MediaStore syskit dir")
+                }
             }
-            val uri = resolver.insert(MediaStore.Files.getContentUri("external"), values) ?: return false
-            resolver.openOutputStream(uri)?.use { os ->
-                os.write(encoded.toByteArray(StandardCharsets.UTF_8))
-                os.flush()
-                Log.d(TAG, "Saved to MediaStore syskit dir")
-                true
-            } ?: false
         } catch (e: Exception) {
             Log.e(TAG, "MediaStore syskit dir save fail", e)
             false
         }
     }
 
-    private fun saveStringToMediaStoreDocuments(context: Context, encoded: String): Boolean {
+    private fun saveStringToMediaStoreDocuments(context: Context, payload: PayloadWriter): Boolean {
         return try {
-            val resolver = context.contentResolver
-            val values = ContentValues().apply {
-                put(MediaStore.Files.FileColumns.DISPLAY_NAME, FILE_NAME_ANDROID11)
-                put(MediaStore.Files.FileColumns.MIME_TYPE, "application/octet-stream")
-                put(MediaStore.Files.FileColumns.RELATIVE_PATH, "Documents/")
+            upsertToMediaStore(context, "Documents/", payload).also { saved ->
+                if (saved && StorageDiagnostics.summary()) {
+                    Log.d(TAG, "Saved to MediaStore Documents fallback")
+                }
             }
-            val uri = resolver.insert(MediaStore.Files.getContentUri("external"), values) ?: return false
-            resolver.openOutputStream(uri)?.use { os ->
-                os.write(encoded.toByteArray(StandardCharsets.UTF_8))
-                os.flush()
-                Log.d(TAG, "Saved to MediaStore Documents fallback")
-                true
-            } ?: false
         } catch (e: Exception) {
             Log.e(TAG, "MediaStore Documents fallback save fail", e)
             false
         }
     }
 
-    private fun readStringFromMediaStoreSyskitDir(context: Context): String? {
-        return readStringFromMediaStore(context, "Documents/$HIDDEN_DIR/", FILE_NAME_ANDROID11)
-    }
-
-    private fun readStringFromMediaStoreDocuments(context: Context): String? {
-        return readStringFromMediaStore(context, "Documents/", FILE_NAME_ANDROID11)
-    }
-
-    private fun readStringFromMediaStore(context: Context, relPath: String, fileName: String): String? {
-        val resolver = context.contentResolver
-        val relPathArg = if (relPath.isEmpty()) "" else if (relPath.endsWith("/")) relPath else "$relPath/"
-        val selection = "${MediaStore.Files.FileColumns.RELATIVE_PATH}=? AND " +
-                "${MediaStore.Files.FileColumns.DISPLAY_NAME}=?"
-        val selectionArgs = arrayOf(relPathArg, fileName)
-        val cursor = resolver.query(
-            MediaStore.Files.getContentUri("external"),
-            arrayOf(MediaStore.Files.FileColumns._ID),
-            selection, selectionArgs, null
-        )
-        
-        return if (cursor != null && cursor.moveToFirst()) {
-            val id = cursor.getLong(0)
-            val uri = ContentUris.withAppendedId(
-                MediaStore.Files.getContentUri("external"), id
-            )
+    /**
+     * 已有同名行时截断重写，没有时才插入新行，避免MediaStore生成"sysdata (1)"之类的重复文件
+     * 已有的行不属于当前应用无法写入时，仍插入新行
+     */
+    private fun upsertToMediaStore(context: Context, relPath: String, payload: PayloadWriter): Boolean {
+        val existing = MediaStoreLocator.locate(context, MediaStore.Files.getContentUri("external"), relPath, FILE_NAME_ANDROID11)
+        if (existing != null) {
             try {
-                resolver.openInputStream(uri)?.use { inputStream ->
-                    BufferedReader(InputStreamReader(inputStream, StandardCharsets.UTF_8)).use { reader ->
-                        val sb = StringBuilder()
-                        var line: String?
-                        while (reader.readLine().also { line = it } != null) {
-                            sb.append(line).append("\n")
-                        }
-                        if (sb.isNotEmpty()) sb.setLength(sb.length - 1)
-                        sb.toString()
-                    }
-                }
-            } catch (e: Exception) {
-                Log.e(TAG, "Read MediaStore file fail", e)
-                null
-            } finally {
-                cursor.close()
+                return writeToMediaStore(context, existing.uri, payload)
+            } catch (e: SecurityException) {
+                Log.e(TAG, "Existing row not writable, inserting a new one: ${existing.uri}", e)
             }
-        } else {
-            cursor?.close()
-            null
         }
+        val values = ContentValues().apply {
+            put(MediaStore.Files.FileColumns.DISPLAY_NAME, FILE_NAME_ANDROID11)
+            put(MediaStore.Files.FileColumns.MIME_TYPE, "application/octet-stream")
+            put(MediaStore.Files.FileColumns.RELATIVE_PATH, relPath)
+        }
+        val uri = context.contentResolver.insert(MediaStore.Files.getContentUri("external"), values) ?: return false
+        MediaStoreLocator.remember(context, relPath, FILE_NAME_ANDROID11, uri)
+        return writeToMediaStore(context, uri, payload)
     }
 
-    // Base64解码
-    private fun decodeBase64(encoded: String): String? {
-        return try {
-            val decoded = Base64.decode(encoded, Base64.DEFAULT)
-            String(decoded, StandardCharsets.UTF_8)
-        } catch (e: Exception) {
-            Log.e(TAG, "Base64 decode fail", e)
-            null
-        }
+    private fun writeToMediaStore(context: Context, uri: Uri, payload: PayloadWriter): Boolean {
+        return context.contentResolver.openOutputStream(uri, "wt")?.use { os ->
+            AndroidBase64Engine.PIPELINE.writeStored(os, binaryFormat, payloadCodec, StorageFormat.UNKNOWN_LENGTH, payload)
+            true
+        } ?: false
     }
-}
+}
\ No newline at end of file
@@ -1,31 +1,41 @@
 package com.example.androidkit;
 
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
-import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
+import android.os.ParcelFileDescriptor;
 import android.provider.DocumentsContract;
 import android.provider.MediaStore;
 import android.util.Base64;
 import android.util.Log;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 管理外部存储的工具类，用于在应用卸载后仍能保留数据
@@ -37,66 +47,921 @@ public class ExternalStorageUtils {
     private static final String HIDDEN_DIR = "Android/syskit"; // 所有版本统一目录
     private static final String FILE_NAME_ANDROID10 = ".sysdata"; // Android 10及以下
     private static final String FILE_NAME_ANDROID11 = "sysdata.txt"; // Android 11+，使用.txt后缀
+    // Android 10+ MediaStore中的相对路径
+    private static final String MEDIA_RELATIVE_PATH = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/";
     
     // 使用公共MIME类型
     private static final String PUBLIC_MIME_TYPE = "text/plain";
 
-    // 存储文件URI，用于权限请求
-    private static Uri lastSavedFileUri = null;
+    // MediaStore中找不到文件时，等待媒体扫描完成的最长时间
+    private static final long SCAN_TIMEOUT_MILLIS = 1500;
+
+    private static final SyskitFile SYSDATA_FILE = new SyskitFile(FILE_NAME_ANDROID11, FILE_NAME_ANDROID10);
+    // 分块存储的清单，块文件为sysdata-<SHA-256>.txt，Android 9及以下为.sysdata-<SHA-256>
+    private static final SyskitFile CHUNK_MANIFEST = new SyskitFile("sysdata-manifest.txt", ".sysdata-manifest");
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    // 存储文件URI，用于权限请求，保存和读取线程都会更新
+    private static volatile Uri lastSavedFileUri = null;
+
+    private static final String LOCK_FILE_NAME = "syskit.lock";
+    private static volatile StorageLock storageLock;
+
+    // 暂存写入模式：先完整写入新文件再替换旧文件，读取方不会看到写了一半的内容
+    private static volatile boolean stagedWritesEnabled = true;
+
+    /**
+     * 设置是否使用暂存写入，默认开启
+     * Android 10+先写入IS_PENDING=1的新行，写完后发布并删除旧行；Android 9及以下先写临时文件再rename
+     * 关闭后直接截断原文件原地写入
+     */
+    public static void setStagedWritesEnabled(boolean enabled) {
+        stagedWritesEnabled = enabled;
+    }
+
+    // 保存时使用的编码器，null表示不写文件头的旧格式，读取时总是按文件头自动识别
+    private static volatile PayloadCodec payloadCodec = null;
+
+    /**
+     * 设置保存时使用的编码器，例如PayloadCodecs.deflate(6)，默认null保持旧格式
+     * 只影响之后的保存，已有文件无论使用哪种编码器都能读取
+     */
+    public static void setPayloadCodec(PayloadCodec codec) {
+        payloadCodec = codec;
+    }
+
+    // 二进制格式：不经过Base64直接写出带帧头的原始字节，读取时自动识别两种格式
+    private static volatile boolean binaryFormatEnabled = false;
+
+    /**
+     * 设置保存时是否使用二进制格式，默认关闭
+     * 二进制格式比Base64少约25%的文件大小，也省去编码和解码过程，但旧版本应用无法读取
+     */
+    public static void setBinaryFormatEnabled(boolean enabled) {
+        binaryFormatEnabled = enabled;
+    }
+
+    // 完整性头：在存储内容前写入递增的版本号、长度和CRC32C，读取时自动识别
+    private static volatile boolean integrityHeaderEnabled = false;
+    // 有内容但没有完整性头时的版本号，与没有内容时的0区分
+    private static final long HEADERLESS_VERSION = 1;
+    // 本进程最近一次保存使用的版本号
+    private static final AtomicLong LAST_VERSION = new AtomicLong();
+
+    /**
+     * 设置保存时是否写入完整性头，默认关闭，关闭时保存的文件与旧版本格式相同
+     * 截断或损坏的文件在解码之前就能发现，保存时需要先在内存中完成编码；
+     * compareAndSet保存时总是写入完整性头，旧版本应用无法读取带完整性头的文件，没有完整性头的文件总是可以读取
+     */
+    public static void setIntegrityHeaderEnabled(boolean enabled) {
+        integrityHeaderEnabled = enabled;
+    }
+
+    /**
+     * 下一次保存的版本号，取当前时间和上一个版本号加一中较大的值
+     * 同一进程内严格递增，跨进程和重装后依赖系统时间，与没有完整性头的文件的修改时间也可以比较
+     */
+    private static long nextVersion() {
+        while (true) {
+            long last = LAST_VERSION.get();
+            long next = Math.max(System.currentTimeMillis(), last + 1);
+            if (LAST_VERSION.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * 记录从文件中读到的版本号，之后保存的版本号一定比它大，其他进程保存的版本号领先于系统时间时也能保证递增
+     */
+    private static void observeVersion(long version) {
+        while (true) {
+            long last = LAST_VERSION.get();
+            if (last >= version || LAST_VERSION.compareAndSet(last, version)) {
+                return;
+            }
+        }
+    }
+
+    // 跳过未变化内容的保存：记录最后一次保存的内容哈希、存储格式和文件状态
+    private static volatile boolean writeElisionEnabled = true;
+    // 只在持有写锁时修改
+    private static volatile PersistedWrite lastWrite = null;
+    // compareAndSet写入时总是带完整性头，只在持有写锁时访问
+    private static boolean versionedWrite = false;
+
+    /**
+     * 最后一次保存的内容，文件的大小或修改时间变化说明之后被其他进程或其他方式修改过
+     */
+    private static final class PersistedWrite {
+        final String hash;
+        final String format;
+        final File file;
+        final long size;
+        final long modified;
+
+        PersistedWrite(String hash, String format, File file) {
+            this.hash = hash;
+            this.format = format;
+            this.file = file;
+            this.size = file.length();
+            this.modified = file.lastModified();
+        }
+
+        boolean matches(String hash, String format) {
+            // 无法获取文件状态时不跳过，宁可多写一次
+            return size > 0 && modified > 0 && this.hash.equals(hash) && this.format.equals(format)
+                    && file.length() == size && file.lastModified() == modified;
+        }
+    }
+
+    /**
+     * 设置保存的内容与上次保存的相同时是否跳过写入，默认开启
+     * 比较内容的SHA-256和存储格式，并检查文件的大小和修改时间，文件被其他进程修改过时仍会写入
+     * 跳过时不查询MediaStore、不改写文件，也不会触发内容变化通知
+     */
+    public static void setWriteElisionEnabled(boolean enabled) {
+        writeElisionEnabled = enabled;
+    }
+
+    // 直接读取文件时，超过该大小改为内存映射读取
+    private static volatile long mappedReadThreshold = 1024 * 1024;
+
+    /**
+     * 设置改用内存映射读取的文件大小，默认1MB，传Long.MAX_VALUE关闭
+     * 内存映射读取时编码后的内容不复制到Java堆，适合数MB的大文件，小文件映射的开销反而更大
+     */
+    public static void setMappedReadThreshold(long bytes) {
+        mappedReadThreshold = bytes;
+    }
+
+    /**
+     * 设置诊断日志级别，覆盖initDiagnostics按构建类型设置的默认级别
+     * OFF时不执行仅用于调试的MediaStore查询，也不拼接任何过程日志，错误日志总是输出
+     */
+    public static void setDiagnosticsLevel(StorageDiagnostics.Level level) {
+        StorageDiagnostics.setLevel(level);
+    }
+
+    /**
+     * 按构建类型设置诊断日志的默认级别：debug包VERBOSE，release包OFF，并把storage-core的诊断日志输出到Logcat
+     * 在Application或第一个Activity的onCreate中调用一次，没有调用时为OFF
+     */
+    public static void initDiagnostics() {
+        StorageDiagnostics.setDefaultLevel(BuildConfig.DEBUG ? StorageDiagnostics.Level.VERBOSE
+                : StorageDiagnostics.Level.OFF);
+        StorageDiagnostics.setLogger(message -> Log.d(TAG, message));
+    }
+
+    // 分块存储：编码后超过阈值的内容切分为固定大小的块文件，块的读写并行执行
+    private static volatile long chunkedStorageThreshold = Long.MAX_VALUE;
+
+    /**
+     * 设置改用分块存储的内容大小，字符串按字符数、字节数组按字节数计算，默认Long.MAX_VALUE即关闭
+     * 分块后每次保存只重写内容变化的块，读取时逐块校验哈希，适合数MB以上的内容，旧版本应用无法读取
+     * 流式保存save(InputStream)不使用分块存储
+     */
+    public static void setChunkedStorageThreshold(long size) {
+        chunkedStorageThreshold = size;
+    }
+
+    // 日志模式：保存时只追加与当前内容的差异，日志超过阈值后再合并为完整快照
+    private static volatile boolean journalModeEnabled = false;
+    private static volatile long journalCompactThreshold = 256 * 1024;
+    private static final Object JOURNAL_LOCK = new Object();
+
+    /**
+     * 设置是否使用日志模式，默认关闭
+     * 适合频繁对大内容做小修改的场景，读取时需要额外重放日志
+     */
+    public static void setJournalModeEnabled(boolean enabled) {
+        journalModeEnabled = enabled;
+    }
+
+    /**
+     * 日志超过该字节数时，下一次保存合并为完整快照并清空日志
+     */
+    public static void setJournalCompactThreshold(long bytes) {
+        journalCompactThreshold = bytes;
+    }
+
+    // 延迟合并写入：频繁保存时只更新内存中的值，合并为一次写入
+    private static volatile boolean writeBehindEnabled = false;
+    private static final WriteBehindScheduler WRITE_BEHIND =
+            new WriteBehindScheduler(ExternalStorageUtils::saveNow);
+
+    /**
+     * 设置是否使用延迟合并写入，默认关闭
+     * 开启后saveStringToExternalStorage只更新内存中的值并立即返回true，实际写入失败时只记录日志
+     * 关闭时立即安排写入尚未保存的内容
+     */
+    public static void setWriteBehindEnabled(boolean enabled) {
+        writeBehindEnabled = enabled;
+        if (!enabled) {
+            WRITE_BEHIND.flushSoon();
+        }
+    }
+
+    /**
+     * 设置延迟合并写入的时间窗口
+     * @param debounceMillis   最后一次保存后等待的时间，期间没有新的保存才写入，默认500ms
+     * @param maxLatencyMillis 第一次未写入的保存最多等待的时间，持续保存时也会按该间隔写入，默认3000ms
+     */
+    public static void setWriteBehindDelays(long debounceMillis, long maxLatencyMillis) {
+        WRITE_BEHIND.setDelays(debounceMillis, maxLatencyMillis);
+    }
+
+    /**
+     * 立即写入延迟合并中尚未保存的内容，会执行I/O，不要在主线程调用
+     * 没有待写内容时返回true
+     */
+    public static boolean flush() {
+        return WRITE_BEHIND.flush();
+    }
+
+    /**
+     * 在存储线程池中尽快写入尚未保存的内容，可在主线程调用，例如在onStop中
+     */
+    public static void flushAsync() {
+        WRITE_BEHIND.flushSoon();
+    }
+
+    /**
+     * 延迟合并写入收到的保存次数
+     */
+    public static long getWriteBehindSaveCount() {
+        return WRITE_BEHIND.getSaveCount();
+    }
+
+    /**
+     * 延迟合并写入实际执行的写入次数
+     */
+    public static long getWriteBehindFlushCount() {
+        return WRITE_BEHIND.getFlushCount();
+    }
+
+    /**
+     * 被后续保存覆盖、没有实际写入的保存次数
+     */
+    public static long getCoalescedWriteCount() {
+        return WRITE_BEHIND.getCoalescedCount();
+    }
+
+    /**
+     * 保存字符串到外部存储，兼容所有Android主流版本，内容默认Base64编码
+     * 优化后可以解决应用卸载重装后UID变化导致无法访问文件的问题
+     */
+    public static boolean saveStringToExternalStorage(Context context, final String data) {
+        if (data == null) {
+            Log.e(TAG, "Cannot save null data");
+            return false;
+        }
+        
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "准备保存数据，长度: " + data.length() + " 字符");
+        }
+        
+        if (writeBehindEnabled) {
+            WRITE_BEHIND.save(context, data);
+            return true;
+        }
+        return saveNow(context, data);
+    }
+
+    private static boolean saveNow(Context context, String data) {
+        if (journalModeEnabled) {
+            return saveWithJournal(context, data);
+        }
+        return saveSnapshot(context, data);
+    }
+
+    private static boolean saveSnapshot(Context context, final String data) {
+        if (!writeElisionEnabled) {
+            return saveSnapshotNow(context, data);
+        }
+        StorageLock lock = lock(context);
+        lock.lockWrite();
+        try {
+            boolean chunked = data.length() >= chunkedStorageThreshold;
+            String hash = contentHash(data);
+            String format = storageFormat(chunked);
+            PersistedWrite last = lastWrite;
+            // 日志中的增量不反映在快照文件的状态上，有日志时快照相同也要重写
+            if (last != null && last.matches(hash, format) && !SysdataJournal.exists()) {
+                StorageMetrics.increment(StorageMetrics.Counter.SAVE_ELIDED);
+                if (StorageDiagnostics.verbose()) {
+                    Log.d(TAG, "内容与上次保存的相同，跳过写入");
+                }
+                return true;
+            }
+            boolean saved = saveSnapshotNow(context, data);
+            if (saved) {
+                lastWrite = new PersistedWrite(hash, format,
+                        chunked ? CHUNK_MANIFEST.localFile() : SYSDATA_FILE.localFile());
+            }
+            return saved;
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    private static boolean saveSnapshotNow(Context context, final String data) {
+        // 边做UTF-8编码边做Base64编码，不生成完整的字节数组和编码后字符串
+        return savePayload(context, StoragePipeline.stringWriter(data), StorageFormat.UNKNOWN_LENGTH,
+                data.length() >= chunkedStorageThreshold);
+    }
+
+    /**
+     * 内容UTF-8编码后的SHA-256，边编码边计算，不生成完整的字节数组
+     */
+    private static String contentHash(String data) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            OutputStream discard = new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            };
+            StoragePipeline.stringWriter(data).writeTo(new DigestOutputStream(discard, digest));
+            return Base64.encodeToString(digest.digest(), Base64.NO_WRAP);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // 不会发生，返回不会与任何哈希相同的值，总是写入
+            Log.e(TAG, "计算内容哈希失败", e);
+            return "";
+        }
+    }
+
+    /**
+     * 影响文件内容的保存设置，设置变化后即使内容相同也重新写入
+     */
+    private static String storageFormat(boolean chunked) {
+        PayloadCodec codec = payloadCodec;
+        return (binaryFormatEnabled ? "binary" : "base64") + "/" + (codec == null ? "-" : codec.id())
+                + "/" + (integrityHeaderEnabled ? "header" : "-") + "/" + (chunked ? "chunked" : "-");
+    }
+
+    /**
+     * 带版本号的内容，version为完整性头中的版本号，没有保存内容时为0，有内容但没有完整性头时为1，
+     * 读取版本号失败时为UNKNOWN_VERSION，用它调用compareAndSet总是失败
+     */
+    public static final class VersionedValue {
+        public static final long UNKNOWN_VERSION = -1;
+
+        public final long version;
+        public final String value;
+
+        VersionedValue(long version, String value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 同时读取内容和它的版本号，用于之后调用compareAndSet
+     * 先写入延迟合并中尚未保存的内容，会执行I/O，不要在主线程调用
+     */
+    public static VersionedValue readVersioned(Context context) {
+        WRITE_BEHIND.flush();
+        StorageLock lock = lock(context);
+        lock.lockRead();
+        try {
+            long version;
+            try {
+                version = readStoredVersion(context);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "读取版本号失败", e);
+                version = VersionedValue.UNKNOWN_VERSION;
+            }
+            return new VersionedValue(version, readStringFromExternalStorage(context));
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    /**
+     * 当前保存内容的版本号与expectedVersion相同时才保存newValue，返回是否保存
+     * 多个写入方各自读取、修改后保存时，用它代替直接保存，避免覆盖其他写入方在此期间保存的内容
+     * expectedVersion来自readVersioned，传0表示期望还没有保存内容，读取当前版本号失败时不保存
+     * 关闭完整性头时普通保存不带版本号，两次普通保存的版本号都是1，无法区分，多个写入方应都通过compareAndSet保存
+     * 写入时总是带完整的完整性头，版本号大于expectedVersion；版本号只在完整保存时更新，日志模式下追加的增量不更新版本号，
+     * 需要compareAndSet的场景不要开启日志模式，会执行I/O，不要在主线程调用
+     */
+    public static boolean compareAndSet(Context context, long expectedVersion, String newValue) {
+        if (newValue == null) {
+            Log.e(TAG, "Cannot save null data");
+            return false;
+        }
+        if (expectedVersion < 0) {
+            Log.e(TAG, "Unknown expected version: " + expectedVersion);
+            return false;
+        }
+        // 延迟合并中尚未保存的内容没有版本号，先写入再比较
+        WRITE_BEHIND.flush();
+        StorageLock lock = lock(context);
+        lock.lockWrite();
+        try {
+            long current;
+            try {
+                current = readStoredVersion(context);
+            } catch (IOException | RuntimeException e) {
+                // 无法确认当前版本号时不能当作没有内容，否则会覆盖其他写入方保存的内容
+                Log.e(TAG, "读取版本号失败，放弃保存", e);
+                return false;
+            }
+            if (current != expectedVersion) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "版本号不一致，放弃保存，期望: " + expectedVersion + "，当前: " + current);
+                }
+                return false;
+            }
+            observeVersion(current);
+            versionedWrite = true;
+            try {
+                boolean saved = saveSnapshotNow(context, newValue);
+                lastWrite = null;
+                return saved;
+            } finally {
+                versionedWrite = false;
+            }
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * 只读取完整性头中的版本号，没有保存内容时返回0，没有完整性头时返回HEADERLESS_VERSION，读取失败时抛出异常
+     */
+    private static long readStoredVersion(Context context) throws IOException {
+        InputStream raw = openRawInput(context);
+        if (raw == null) {
+            // 文件或分块清单还在却打不开，是读取失败而不是没有内容
+            if (SYSDATA_FILE.localFile().exists() || CHUNK_MANIFEST.localFile().exists()) {
+                throw new IOException("无法打开已保存的内容");
+            }
+            return 0;
+        }
+        try (InputStream in = raw) {
+            IntegrityHeader header = IntegrityHeader.read(in);
+            return header == null ? HEADERLESS_VERSION : header.version;
+        }
+    }
+
+    /**
+     * 保存字节数组，二进制格式下直接写出，不经过任何文本编码
+     */
+    public static boolean saveBytes(Context context, byte[] data) {
+        if (data == null) {
+            Log.e(TAG, "Cannot save null data");
+            return false;
+        }
+        WRITE_BEHIND.supersede();
+        return savePayload(context, out -> out.write(data), data.length, data.length >= chunkedStorageThreshold);
+    }
+
+    /**
+     * 保存ByteBuffer中position到limit之间的内容，不改变buffer的position
+     */
+    public static boolean saveBytes(Context context, ByteBuffer data) {
+        if (data == null) {
+            Log.e(TAG, "Cannot save null data");
+            return false;
+        }
+        WRITE_BEHIND.supersede();
+        return savePayload(context, StoragePipeline.bufferWriter(data), data.remaining(),
+                data.remaining() >= chunkedStorageThreshold);
+    }
+
+    /**
+     * 流式保存输入流中的全部内容，边读边Base64编码写入，内存占用与内容大小无关
+     * 调用方负责关闭input
+     */
+    public static boolean save(Context context, final InputStream input) {
+        if (input == null) {
+            Log.e(TAG, "Cannot save null input");
+            return false;
+        }
+        WRITE_BEHIND.supersede();
+        return savePayload(context, out -> StorageStreams.copy(input, out), StorageFormat.UNKNOWN_LENGTH, false);
+    }
+
+    /**
+     * 批量保存同一目录下的多个相关文件，例如身份文件、配置文件和校验文件，key为文件名，value为内容
+     * Android 10+用一次查询找出已有的行，一次applyBatch创建缺少的行，并行写出内容后再一次applyBatch发布新行，
+     * 逐个保存时每个文件都需要单独的查询、插入和写入；Android 9及以下并行暂存写入各文件
+     * 全部保存成功才返回true，存储格式与单个保存相同，数据文件不使用分块存储，保存后删除已有的分块存储，
+     * 会执行I/O，不要在主线程调用
+     */
+    public static boolean saveBatch(Context context, Map<String, String> files) {
+        if (files == null || files.isEmpty()) {
+            Log.e(TAG, "Cannot save empty batch");
+            return false;
+        }
+        boolean containsData = files.containsKey(FILE_NAME_ANDROID11);
+        if (containsData) {
+            WRITE_BEHIND.supersede();
+        }
+        StorageLock lock = lock(context);
+        lock.lockWrite();
+        long start = StorageMetrics.start();
+        boolean saved = false;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                saved = saveBatchToMediaStore(context, files);
+            } else {
+                saved = saveBatchToLegacyFiles(files);
+            }
+            if (saved && containsData && chunkedStorageExists()) {
+                // 读取时分块存储优先，与savePayload相同，只保留刚写入的单文件布局
+                chunkedStore(context).delete();
+            }
+            if (saved && StorageDiagnostics.summary()) {
+                Log.d(TAG, "批量保存完成，文件数: " + files.size());
+            }
+            return saved;
+        } finally {
+            StorageMetrics.record(StorageMetrics.Stage.SAVE_BATCH, start);
+            if (!saved) {
+                StorageMetrics.increment(StorageMetrics.Counter.SAVE_FAILURE);
+            }
+            if (containsData) {
+                lastWrite = null;
+                StorageValueCache.invalidate();
+                if (saved && SysdataJournal.exists()) {
+                    SysdataJournal.clear(context);
+                }
+            }
+            lock.unlockWrite();
+        }
+    }
+
+    private static boolean saveBatchToMediaStore(Context context, Map<String, String> files) {
+        ContentResolver resolver = context.getContentResolver();
+        Uri collection = MediaStore.Downloads.EXTERNAL_CONTENT_URI;
+        Map<String, Uri> uris = new HashMap<>();
+        List<Uri> inserted = new ArrayList<>();
+        try {
+            // 一次查询找出已有的行
+            StringBuilder placeholders = new StringBuilder();
+            List<String> args = new ArrayList<>(files.size() + 1);
+            args.add(MEDIA_RELATIVE_PATH);
+            for (String name : files.keySet()) {
+                placeholders.append(placeholders.length() == 0 ? "?" : ",?");
+                args.add(name);
+            }
+            String selection = MediaStore.MediaColumns.RELATIVE_PATH + "=? AND " +
+                    MediaStore.MediaColumns.DISPLAY_NAME + " IN (" + placeholders + ")";
+            try (Cursor cursor = resolver.query(collection,
+                    new String[]{MediaStore.MediaColumns._ID, MediaStore.MediaColumns.DISPLAY_NAME},
+                    selection, args.toArray(new String[0]), null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    String name = cursor.getString(1);
+                    if (!uris.containsKey(name)) {
+                        uris.put(name, ContentUris.withAppendedId(collection, cursor.getLong(0)));
+                    }
+                }
+            }
+
+            // 一次applyBatch创建缺少的行，写完之前保持IS_PENDING，其他应用看不到写了一半的文件
+            List<String> missing = new ArrayList<>();
+            ArrayList<ContentProviderOperation> inserts = new ArrayList<>();
+            for (String name : files.keySet()) {
+                if (uris.containsKey(name)) {
+                    continue;
+                }
+                missing.add(name);
+                inserts.add(ContentProviderOperation.newInsert(collection)
+                        .withValue(MediaStore.MediaColumns.DISPLAY_NAME, name)
+                        .withValue(MediaStore.MediaColumns.MIME_TYPE, PUBLIC_MIME_TYPE)
+                        .withValue(MediaStore.MediaColumns.RELATIVE_PATH, MEDIA_RELATIVE_PATH)
+                        .withValue(MediaStore.MediaColumns.IS_PENDING, 1)
+                        .build());
+            }
+            if (!inserts.isEmpty()) {
+                ContentProviderResult[] results = resolver.applyBatch(MediaStore.AUTHORITY, inserts);
+                for (int i = 0; i < results.length; i++) {
+                    if (results[i].uri == null) {
+                        throw new IOException("创建文件失败: " + missing.get(i));
+                    }
+                    uris.put(missing.get(i), results[i].uri);
+                    inserted.add(results[i].uri);
+                }
+            }
+
+            // 并行写出各文件内容
+            List<StorageBatch.Write> writes = new ArrayList<>(files.size());
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                final Uri uri = uris.get(file.getKey());
+                final String value = file.getValue();
+                writes.add(() -> {
+                    try (OutputStream os = resolver.openOutputStream(uri, "wt")) {
+                        if (os == null) {
+                            throw new IOException("无法打开输出流，URI: " + uri);
+                        }
+                        writeStored(os, StoragePipeline.stringWriter(value), StorageFormat.UNKNOWN_LENGTH);
+                    }
+                });
+            }
+            StorageBatch.writeAll(StorageExecutors.probe(), writes);
+
+            // 一次applyBatch发布新创建的行
+            if (!inserted.isEmpty()) {
+                ArrayList<ContentProviderOperation> publish = new ArrayList<>(inserted.size());
+                for (Uri uri : inserted) {
+                    publish.add(ContentProviderOperation.newUpdate(uri)
+                            .withValue(MediaStore.MediaColumns.IS_PENDING, 0)
+                            .build());
+                }
+                resolver.applyBatch(MediaStore.AUTHORITY, publish);
+                inserted.clear();
+            }
+            Uri dataUri = uris.get(FILE_NAME_ANDROID11);
+            if (dataUri != null) {
+                MediaStoreLocator.remember(context, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11, dataUri);
+                lastSavedFileUri = dataUri;
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "批量保存到MediaStore失败", e);
+            return false;
+        } finally {
+            // 失败时删除本次创建但未发布的行
+            for (Uri uri : inserted) {
+                try {
+                    resolver.delete(uri, null, null);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "删除未发布的行失败: " + uri, e);
+                }
+            }
+        }
+    }
+
+    private static boolean saveBatchToLegacyFiles(Map<String, String> files) {
+        File dir = new File(Environment.getExternalStorageDirectory(), HIDDEN_DIR);
+        List<StorageBatch.Write> writes = new ArrayList<>(files.size());
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            // 主数据文件在旧版本上使用隐藏文件名
+            String name = FILE_NAME_ANDROID11.equals(file.getKey()) ? FILE_NAME_ANDROID10 : file.getKey();
+            final LegacyFileBackend backend = new LegacyFileBackend(new File(dir, name));
+            final String value = file.getValue();
+            writes.add(() -> backend.replace(
+                    out -> writeStored(out, StoragePipeline.stringWriter(value), StorageFormat.UNKNOWN_LENGTH)));
+        }
+        try {
+            StorageBatch.writeAll(StorageExecutors.probe(), writes);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "批量保存到隐藏目录失败: " + dir.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 日志模式保存：在当前内容基础上追加一条差异记录
+     * 没有快照、日志损坏或超过阈值时写入完整快照
+     */
+    private static boolean saveWithJournal(Context context, String data) {
+        StorageLock lock = lock(context);
+        lock.lockWrite();
+        try {
+            return saveWithJournalLocked(context, data);
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    private static boolean saveWithJournalLocked(Context context, String data) {
+        synchronized (JOURNAL_LOCK) {
+            long start = StorageMetrics.start();
+            String snapshot = readSnapshot(context);
+            if (snapshot != null) {
+                SysdataJournal.Replay replay = replayJournal(context, snapshot);
+                if (replay.appendable && replay.bytes < journalCompactThreshold) {
+                    try {
+                        SysdataJournal.append(context, snapshot, replay.value, data, replay.bytes == 0);
+                        // 快照文件没有变化，但读取结果已经不同
+                        lastWrite = null;
+                        if (StorageDiagnostics.summary()) {
+                            Log.d(TAG, "已追加增量记录，日志大小: " + replay.bytes + " 字节");
+                        }
+                        StorageMetrics.record(StorageMetrics.Stage.SAVE, start);
+                        return true;
+                    } catch (IOException | RuntimeException e) {
+                        Log.e(TAG, "追加增量记录失败，改为写入完整快照", e);
+                    }
+                } else {
+                    if (StorageDiagnostics.summary()) {
+                        Log.d(TAG, "日志需要合并，写入完整快照，日志大小: " + replay.bytes + " 字节");
+                    }
+                }
+            }
+            return saveSnapshot(context, data);
+        }
+    }
+
+    private static boolean savePayload(Context context, final PayloadWriter writer, long length, boolean chunked) {
+        StorageLock lock = lock(context);
+        lock.lockWrite();
+        long start = StorageMetrics.start();
+        boolean saved = false;
+        // 由saveSnapshot在保存成功后重新记录
+        lastWrite = null;
+        try {
+            saved = chunked ? writeChunked(context, writer, length) : writePayload(context, writer, length);
+            if (saved) {
+                // 两种布局只保留一种，读取时分块存储优先，否则旧布局中的内容会遮住新保存的内容
+                if (chunked) {
+                    SYSDATA_FILE.delete(context);
+                } else if (chunkedStorageExists()) {
+                    chunkedStore(context).delete();
+                }
+            }
+            return saved;
+        } finally {
+            StorageMetrics.record(StorageMetrics.Stage.SAVE, start);
+            if (!saved) {
+                StorageMetrics.increment(StorageMetrics.Counter.SAVE_FAILURE);
+            }
+            // 无论成功与否文件内容都可能已变化，使读取缓存失效
+            StorageValueCache.invalidate();
+            if (saved && SysdataJournal.exists()) {
+                // 新快照已包含全部内容，旧日志不能再重放
+                SysdataJournal.clear(context);
+            }
+            lock.unlockWrite();
+        }
+    }
+
+    /**
+     * 按存储格式编码后切分为块，只写出内容变化的块，最后替换清单
+     */
+    private static boolean writeChunked(Context context, PayloadWriter writer, long length) {
+        long start = StorageMetrics.start();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    length > 0 && length < CHUNK_SIZE * 64L ? (int) length * 4 / 3 + 64 : CHUNK_SIZE);
+            writeStored(out, writer, length);
+            int written = chunkedStore(context).write(out.toByteArray());
+            StorageMetrics.record(StorageMetrics.Stage.SAVE_CHUNKED, start);
+            if (StorageDiagnostics.summary()) {
+                Log.d(TAG, "分块保存完成，编码后大小: " + out.size() + " 字节，写出块数: " + written);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "分块保存失败", e);
+            return false;
+        }
+    }
+
+    /**
+     * 分块存储中按存储格式编码的完整内容，没有分块存储时返回null
+     * 块缺失或校验失败时记录日志并返回null，由调用方继续读取旧布局的文件
+     */
+    private static byte[] readChunked(Context context) {
+        if (!chunkedStorageExists()) {
+            return null;
+        }
+        long start = StorageMetrics.start();
+        try {
+            byte[] stored = chunkedStore(context).read();
+            if (stored != null) {
+                StorageMetrics.record(StorageMetrics.Stage.READ_CHUNKED, start);
+            }
+            return stored;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "分块读取失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 读取并解码分块存储中的内容，没有分块存储或读取失败时返回null
+     */
+    static String readChunkedString(Context context) {
+        byte[] stored = readChunked(context);
+        if (stored == null) {
+            return null;
+        }
+        try {
+            return AndroidBase64Engine.PIPELINE.decodeString(stored);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "分块内容解码失败", e);
+            return null;
+        }
+    }
 
     /**
-     * 保存字符串到外部存储，兼容所有Android主流版本，内容Base64编码
-     * 优化后可以解决应用卸载重装后UID变化导致无法访问文件的问题
+     * 是否存在分块存储清单，只做一次文件状态检查，不查询MediaStore
+     * 没有开启分块存储时每次读取和保存都会经过这里
      */
-    public static boolean saveStringToExternalStorage(Context context, String data) {
-        if (data == null) {
-            Log.e(TAG, "Cannot save null data");
-            return false;
+    private static boolean chunkedStorageExists() {
+        return CHUNK_MANIFEST.localFile().exists();
+    }
+
+    /**
+     * 分块存储清单在文件系统中的实际位置
+     */
+    static File chunkManifestFile() {
+        return CHUNK_MANIFEST.localFile();
+    }
+
+    private static ChunkedStore chunkedStore(Context context) {
+        final Context appContext = context.getApplicationContext();
+        return new ChunkedStore(new ChunkedStore.Directory() {
+            @Override
+            public StorageBackend manifest() {
+                return CHUNK_MANIFEST.backend(appContext);
+            }
+
+            @Override
+            public StorageBackend chunk(String hash) {
+                return new SyskitFile("sysdata-" + hash + ".txt", ".sysdata-" + hash).backend(appContext);
+            }
+        }, CHUNK_SIZE, StorageExecutors.chunks());
+    }
+
+    private static boolean writePayload(Context context, final PayloadWriter writer, final long length) {
+        if (stagedWritesEnabled) {
+            long start = StorageMetrics.start();
+            try {
+                SYSDATA_FILE.replace(context, out -> writeStored(out, writer, length));
+                StorageMetrics.record(StorageMetrics.Stage.SAVE_STAGED, start);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                // 例如旧文件属于卸载前的应用无法删除，回退原地写入，由其触发权限请求
+                Log.e(TAG, "暂存写入失败，回退原地写入", e);
+                StorageMetrics.increment(StorageMetrics.Counter.FALLBACK_IN_PLACE_WRITE);
+            }
         }
-        
-        Log.d(TAG, "准备保存数据，长度: " + data.length() + " 字符");
-        
-        String encoded = Base64.encodeToString(data.getBytes(StandardCharsets.UTF_8), Base64.DEFAULT);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             // Android 10+，使用MediaStore API
-            Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT + "，使用MediaStore API保存数据");
-            return saveStringToMediaStore(context, encoded);
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT + "，使用MediaStore API保存数据");
+            }
+            return saveToMediaStore(context, writer, length);
         } else {
             // Android 9及以下，直接写入根目录/Android/syskit/.sysdata
-            Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT + "，使用直接文件访问保存数据");
-            
-            File externalStorage = Environment.getExternalStorageDirectory();
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT + "，使用直接文件访问保存数据");
+            }
+            return saveToLegacyFile(writer, length);
+        }
+    }
+
+    private static boolean saveToLegacyFile(PayloadWriter writer, long length) {
+        File externalStorage = Environment.getExternalStorageDirectory();
+        if (StorageDiagnostics.verbose()) {
             Log.d(TAG, "外部存储根目录: " + externalStorage.getAbsolutePath());
-            
-            File dir = new File(externalStorage, HIDDEN_DIR);
+        }
+        
+        File dir = new File(externalStorage, HIDDEN_DIR);
+        if (StorageDiagnostics.verbose()) {
             Log.d(TAG, "目标目录: " + dir.getAbsolutePath() + "，是否存在: " + dir.exists());
-            
-            if (!dir.exists() && !dir.mkdirs()) {
-                Log.e(TAG, "创建目录失败: " + dir.getAbsolutePath());
-                return false;
-            }
-            
-            File file = new File(dir, FILE_NAME_ANDROID10);
+        }
+        
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "创建目录失败: " + dir.getAbsolutePath());
+            return false;
+        }
+        
+        File file = new File(dir, FILE_NAME_ANDROID10);
+        if (StorageDiagnostics.verbose()) {
             Log.d(TAG, "目标文件: " + file.getAbsolutePath());
-            
-            try (FileOutputStream fos = new FileOutputStream(file);
-                 OutputStreamWriter writer = new OutputStreamWriter(fos, StandardCharsets.UTF_8)) {
-                writer.write(encoded);
-                writer.flush();
+        }
+        
+        long start = StorageMetrics.start();
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            writeStored(fos, writer, length);
+            StorageMetrics.record(StorageMetrics.Stage.SAVE_WRITE, start);
+            if (StorageDiagnostics.summary()) {
                 Log.d(TAG, "数据成功保存到文件: " + file.getAbsolutePath() + "，文件大小: " + file.length() + " 字节");
-                return true;
-            } catch (IOException e) {
-                Log.e(TAG, "保存到隐藏目录失败: " + file.getAbsolutePath(), e);
-                return false;
             }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "保存到隐藏目录失败: " + file.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    private static void writeStored(OutputStream raw, PayloadWriter writer, long length) throws IOException {
+        final boolean binary = binaryFormatEnabled;
+        final PayloadCodec codec = payloadCodec;
+        if (integrityHeaderEnabled || versionedWrite) {
+            IntegrityHeader.write(raw, nextVersion(),
+                    out -> AndroidBase64Engine.PIPELINE.writeStored(out, binary, codec, length, writer));
+            return;
         }
+        AndroidBase64Engine.PIPELINE.writeStored(raw, binary, codec, length, writer);
     }
 
     /**
      * 保存字符串到MediaStore公共目录
      * 使用公共MIME类型和公共目录，解决应用卸载重装后UID变化的问题
      */
-    private static boolean saveStringToMediaStore(Context context, String data) {
+    private static boolean saveToMediaStore(Context context, PayloadWriter writer, long length) {
         ContentResolver resolver = context.getContentResolver();
         ContentValues values = new ContentValues();
         
@@ -108,37 +973,35 @@ public class ExternalStorageUtils {
             // Android 10+，设置相对路径
             String relativePath = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR;
             values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
-            Log.d(TAG, "设置相对路径: " + relativePath);
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "设置相对路径: " + relativePath);
+            }
         }
         
         Uri uri = MediaStore.Downloads.EXTERNAL_CONTENT_URI;
-        Uri fileUri = null;
+        Uri fileUri;
         
         try {
-            // 先尝试查询是否已存在同名文件
-            String selection = MediaStore.MediaColumns.DISPLAY_NAME + "=?";
-            String[] selectionArgs = new String[]{FILE_NAME_ANDROID11};
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                selection += " AND " + MediaStore.MediaColumns.RELATIVE_PATH + "=?";
-                String relativePath = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/";
-                selectionArgs = new String[]{FILE_NAME_ANDROID11, relativePath};
-            }
-            
-            try (Cursor cursor = resolver.query(uri, new String[]{MediaStore.MediaColumns._ID}, 
-                    selection, selectionArgs, null)) {
-                
-                if (cursor != null && cursor.moveToFirst()) {
-                    // 文件已存在，获取其URI
-                    long id = cursor.getLong(0);
-                    fileUri = ContentUris.withAppendedId(uri, id);
+            long start = StorageMetrics.start();
+            // 先尝试查询是否已存在同名文件，已解析过的URI只需按_ID校验
+            MediaStoreLocator.FileInfo existing = MediaStoreLocator.locate(
+                    context, uri, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11);
+            if (existing != null) {
+                fileUri = existing.uri;
+                if (StorageDiagnostics.verbose()) {
                     Log.d(TAG, "找到已存在的文件，URI: " + fileUri);
-                } else {
-                    // 文件不存在，创建新文件
-                    fileUri = resolver.insert(uri, values);
+                }
+            } else {
+                // 文件不存在，创建新文件
+                fileUri = resolver.insert(uri, values);
+                if (StorageDiagnostics.verbose()) {
                     Log.d(TAG, "创建新文件，URI: " + fileUri);
                 }
+                if (fileUri != null) {
+                    MediaStoreLocator.remember(context, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11, fileUri);
+                }
             }
+            StorageMetrics.record(StorageMetrics.Stage.SAVE_LOCATE, start);
             
             if (fileUri == null) {
                 Log.e(TAG, "无法创建或找到文件");
@@ -148,22 +1011,19 @@ public class ExternalStorageUtils {
             // 保存URI用于权限请求
             lastSavedFileUri = fileUri;
             
-            // 获取文件的实际路径
-            String filePath = getPathFromUri(context, fileUri);
-            if (filePath != null) {
-                Log.d(TAG, "文件实际路径: " + filePath);
-            } else {
-                Log.d(TAG, "无法获取文件实际路径，只有URI: " + fileUri);
-            }
+            logFilePath(context, fileUri);
             
+            start = StorageMetrics.start();
             try (OutputStream os = resolver.openOutputStream(fileUri, "wt")) {
                 if (os == null) {
                     Log.e(TAG, "无法打开输出流，URI: " + fileUri);
                     return false;
                 }
-                os.write(data.getBytes(StandardCharsets.UTF_8));
-                os.flush();
-                Log.d(TAG, "成功写入数据到MediaStore，长度: " + data.length() + " 字符");
+                writeStored(os, writer, length);
+                StorageMetrics.record(StorageMetrics.Stage.SAVE_WRITE, start);
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "成功写入数据到MediaStore，URI: " + fileUri);
+                }
                 return true;
             } catch (IOException e) {
                 Log.e(TAG, "写入MediaStore失败，URI: " + fileUri, e);
@@ -175,6 +1035,24 @@ public class ExternalStorageUtils {
         }
     }
 
+    /**
+     * 保存和读取共用的锁：读取互不阻塞，写入互斥，同一应用的其他进程通过应用私有目录中的锁文件同步
+     * ExternalStorageManager和StorageLocationResolver也使用同一个锁
+     */
+    static StorageLock lock(Context context) {
+        StorageLock lock = storageLock;
+        if (lock == null) {
+            synchronized (ExternalStorageUtils.class) {
+                if (storageLock == null) {
+                    File dir = context.getApplicationContext().getFilesDir();
+                    storageLock = new StorageLock(dir != null ? new File(dir, LOCK_FILE_NAME) : null);
+                }
+                lock = storageLock;
+            }
+        }
+        return lock;
+    }
+
     /**
      * 获取需要请求权限的URI列表
      * 用于MediaStore.createWriteRequest
@@ -188,50 +1066,56 @@ public class ExternalStorageUtils {
     }
 
     /**
-     * 尝试直接读取已知路径的文件
+     * 尝试直接读取已知路径的文件，返回解码后的内容
      * 当MediaStore查询失败时使用，如果文件存在但没有权限会返回对应的URI用于请求权限
+     * 不扫描文件，需要扫描时由readStringFromMediaStore在查询前完成，每次读取最多等待一次扫描
      */
     private static String tryReadExistingFile(Context context) {
         try {
-            File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-            File targetDir = new File(downloadDir, HIDDEN_DIR);
-            File targetFile = new File(targetDir, FILE_NAME_ANDROID11);
+            File targetFile = mediaStoreFile();
             
-            Log.d(TAG, "尝试直接读取已知文件: " + targetFile.getAbsolutePath() + "，文件是否存在: " + targetFile.exists());
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "尝试直接读取已知文件: " + targetFile.getAbsolutePath() + "，文件是否存在: " + targetFile.exists());
+            }
             
             if (!targetFile.exists()) {
                 Log.e(TAG, "文件不存在: " + targetFile.getAbsolutePath());
                 return null;
             }
             
-            // 先尝试扫描文件，确保MediaStore能识别到它
-            scanMediaFile(context);
+            String cacheKey = targetFile.getAbsolutePath();
+            long size = targetFile.length();
+            long modified = targetFile.lastModified();
+            String cached = StorageValueCache.get(cacheKey, size, modified);
+            if (cached != null) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "文件未变化，使用缓存内容: " + cacheKey);
+                }
+                StorageMetrics.increment(StorageMetrics.Counter.CACHE_HIT);
+                return cached;
+            }
+            long generation = StorageValueCache.generation();
             
             // 尝试获取文件的URI
             Uri fileUri = getUriForFile(context, targetFile);
             if (fileUri != null) {
-                Log.d(TAG, "获取到文件URI: " + fileUri);
+                if (StorageDiagnostics.verbose()) {
+                    Log.d(TAG, "获取到文件URI: " + fileUri);
+                }
                 lastSavedFileUri = fileUri; // 保存URI用于权限请求
             }
             
             try {
                 // 尝试直接读取文件
-                try (FileInputStream fis = new FileInputStream(targetFile);
-                     InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
-                     BufferedReader reader = new BufferedReader(isr)) {
-                    
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sb.append(line).append("\n");
-                    }
-                    if (sb.length() > 0) sb.setLength(sb.length() - 1);
-                    
-                    Log.d(TAG, "成功直接读取文件，文件大小: " + targetFile.length() + " 字节，内容长度: " + sb.length() + " 字符");
-                    return sb.toString();
+                String decoded = readStoredFile(targetFile, size);
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "成功直接读取文件，文件大小: " + size + " 字节，内容长度: " + decoded.length() + " 字符");
                 }
+                StorageValueCache.put(generation, cacheKey, size, modified, decoded);
+                return decoded;
             } catch (IOException e) {
                 Log.e(TAG, "直接读取文件失败: " + e.getMessage(), e);
+                StorageMetrics.increment(StorageMetrics.Counter.READ_FAILURE);
                 // 文件存在但无法读取，可能是权限问题
                 return null;
             }
@@ -248,28 +1132,10 @@ public class ExternalStorageUtils {
         try {
             // 先尝试通过MediaStore查询
             ContentResolver resolver = context.getContentResolver();
-            String selection;
-            String[] selectionArgs;
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                selection = MediaStore.MediaColumns.DISPLAY_NAME + "=? AND " +
-                        MediaStore.MediaColumns.RELATIVE_PATH + "=?";
-                String relativePath = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/";
-                selectionArgs = new String[]{FILE_NAME_ANDROID11, relativePath};
-            } else {
-                selection = MediaStore.MediaColumns.DISPLAY_NAME + "=?";
-                selectionArgs = new String[]{FILE_NAME_ANDROID11};
-            }
-            
-            try (Cursor cursor = resolver.query(
-                    MediaStore.Downloads.EXTERNAL_CONTENT_URI,
-                    new String[]{MediaStore.MediaColumns._ID},
-                    selection, selectionArgs, null)) {
-                
-                if (cursor != null && cursor.moveToFirst()) {
-                    long id = cursor.getLong(0);
-                    return ContentUris.withAppendedId(MediaStore.Downloads.EXTERNAL_CONTENT_URI, id);
-                }
+            MediaStoreLocator.FileInfo existing = MediaStoreLocator.locate(
+                    context, MediaStore.Downloads.EXTERNAL_CONTENT_URI, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11);
+            if (existing != null) {
+                return existing.uri;
             }
             
             // 如果MediaStore查询失败，尝试使用FileProvider或直接构建content URI
@@ -291,209 +1157,339 @@ public class ExternalStorageUtils {
     }
 
     /**
-     * 从MediaStore公共目录读取字符串
+     * 从MediaStore公共目录读取字符串，返回解码后的内容
      * 使用公共MIME类型和公共目录，解决应用卸载重装后UID变化的问题
+     * 大小和修改时间与缓存一致时直接返回缓存，不再读取文件
+     * 找不到或读取失败时直接读取已知路径的文件，每次读取最多等待一次媒体扫描，调用方不需要再次回退
      */
     private static String readStringFromMediaStore(Context context) {
         ContentResolver resolver = context.getContentResolver();
+        Uri queryUri = MediaStore.Downloads.EXTERNAL_CONTENT_URI;
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "查询URI: " + queryUri + "，相对路径=" + MEDIA_RELATIVE_PATH + " 且 文件名=" + FILE_NAME_ANDROID11);
+        }
         
-        // 查询下载目录中的指定文件
-        String selection;
-        String[] selectionArgs;
+        StorageValueCache.registerObserver(context);
+        long generation = StorageValueCache.generation();
         
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            // 修改查询条件，去掉通配符，使用精确路径匹配
-            selection = MediaStore.MediaColumns.RELATIVE_PATH + "=? AND " +
-                    MediaStore.MediaColumns.DISPLAY_NAME + "=?";
-            String relativePath = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR;
-            selectionArgs = new String[]{relativePath + "/", FILE_NAME_ANDROID11};
-            Log.d(TAG, "查询条件: 相对路径=" + relativePath + "/ 且 文件名=" + FILE_NAME_ANDROID11);
+        // 一次查询同时拿到URI、大小和修改时间
+        long start = StorageMetrics.start();
+        MediaStoreLocator.FileInfo info = MediaStoreLocator.locate(
+                context, queryUri, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11);
+        StorageMetrics.record(StorageMetrics.Stage.READ_QUERY, start);
+        File mediaFile = mediaStoreFile();
+        if (info == null) {
+            // 索引中没有该文件时才扫描，等待扫描完成后再查询一次
+            MediaScanCoordinator.forget(mediaFile);
+            start = StorageMetrics.start();
+            Uri scanned = MediaScanCoordinator.scanAndWait(context, mediaFile, SCAN_TIMEOUT_MILLIS);
+            StorageMetrics.record(StorageMetrics.Stage.READ_SCAN, start);
+            if (scanned != null) {
+                info = MediaStoreLocator.locate(context, queryUri, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11);
+            }
         } else {
-            selection = MediaStore.MediaColumns.DISPLAY_NAME + "=?";
-            selectionArgs = new String[]{FILE_NAME_ANDROID11};
-            Log.d(TAG, "查询条件: 文件名=" + FILE_NAME_ANDROID11);
+            MediaScanCoordinator.markIndexed(mediaFile);
         }
-        
-        Uri queryUri = MediaStore.Downloads.EXTERNAL_CONTENT_URI;
-        Log.d(TAG, "查询URI: " + queryUri);
-        
-        // 尝试先扫描下载目录，确保MediaStore能识别到文件
-        scanMediaFile(context);
-        
-        try (Cursor cursor = resolver.query(
-                queryUri,
-                new String[]{MediaStore.MediaColumns._ID},
-                selection, selectionArgs, null)) {
-            
-            if (cursor == null) {
-                Log.e(TAG, "查询返回空Cursor");
-                return null;
+        if (info == null) {
+            // MediaStore查询失败，尝试直接读取已知文件
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "未找到匹配的文件，尝试直接读取已知路径的文件");
             }
-            
-            Log.d(TAG, "查询结果数量: " + cursor.getCount());
-            
-            if (cursor.moveToFirst()) {
-                long id = cursor.getLong(0);
-                Uri uri = ContentUris.withAppendedId(queryUri, id);
-                Log.d(TAG, "找到文件，URI: " + uri);
-                
-                // 保存URI用于权限请求
-                lastSavedFileUri = uri;
-                
-                // 获取文件的实际路径
-                String filePath = getPathFromUri(context, uri);
-                if (filePath != null) {
-                    Log.d(TAG, "文件实际路径: " + filePath);
-                } else {
-                    Log.d(TAG, "无法获取文件实际路径，只有URI: " + uri);
-                }
-                
-                try (InputStream is = resolver.openInputStream(uri)) {
-                    if (is == null) {
-                        Log.e(TAG, "无法打开输入流，URI: " + uri);
-                        return null;
-                    }
-                    
-                    BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
-                    StringBuilder sb = new StringBuilder();
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sb.append(line).append("\n");
-                    }
-                    if (sb.length() > 0) sb.setLength(sb.length() - 1);
-                    
-                    Log.d(TAG, "成功从MediaStore读取数据，内容长度: " + sb.length() + " 字符");
-                    return sb.toString();
-                } catch (IOException e) {
-                    Log.e(TAG, "读取MediaStore失败，URI: " + uri, e);
-                    return null;
-                } catch (SecurityException e) {
-                    Log.e(TAG, "读取MediaStore时发生安全异常，可能需要请求权限", e);
-                    return null;
-                }
-            } else {
-                Log.d(TAG, "未找到匹配的文件");
-                
-                // MediaStore查询失败，尝试直接读取已知文件
-                Log.d(TAG, "尝试直接读取已知路径的文件");
-                String result = tryReadExistingFile(context);
-                if (result != null) {
+            // 上面已经扫描并等待过，直接读取时不再扫描
+            String result = readFallback(context);
+            if (result != null) {
+                if (StorageDiagnostics.verbose()) {
                     Log.d(TAG, "成功直接读取已知文件");
-                    return result;
                 }
-                
-                // 列出所有下载目录中的文件，帮助调试
-                listAllDownloadFiles(context);
-                
-                return null;
+                return result;
             }
-        } catch (Exception e) {
-            Log.e(TAG, "查询MediaStore时发生异常", e);
             
-            // 出现异常时，也尝试直接读取已知文件
-            Log.d(TAG, "查询异常，尝试直接读取已知路径的文件");
-            String result = tryReadExistingFile(context);
-            if (result != null) {
-                Log.d(TAG, "成功直接读取已知文件");
-                return result;
+            // 列出所有下载目录中的文件，帮助调试，每个文件还要再查询一次路径，只在VERBOSE下执行
+            if (StorageDiagnostics.verbose()) {
+                listAllDownloadFiles(context);
             }
             
             return null;
         }
+        
+        Uri uri = info.uri;
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "找到文件，URI: " + uri);
+        }
+        
+        // 保存URI用于权限请求
+        lastSavedFileUri = uri;
+        
+        String cached = StorageValueCache.get(uri.toString(), info.size, info.modified);
+        if (cached != null) {
+            if (StorageDiagnostics.summary()) {
+                Log.d(TAG, "文件未变化，使用缓存内容，URI: " + uri);
+            }
+            StorageMetrics.increment(StorageMetrics.Counter.CACHE_HIT);
+            return cached;
+        }
+        
+        if (StorageDiagnostics.verbose()) {
+            start = StorageMetrics.start();
+            logFilePath(context, uri);
+            StorageMetrics.record(StorageMetrics.Stage.READ_PATH, start);
+        }
+        
+        try {
+            String decoded = readStoredUri(resolver, uri, info.size);
+            if (decoded != null) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "成功从MediaStore读取数据，内容长度: " + decoded.length() + " 字符");
+                }
+                StorageValueCache.put(generation, uri.toString(), info.size, info.modified, decoded);
+                return decoded;
+            }
+            Log.e(TAG, "无法打开输入流，URI: " + uri);
+        } catch (IOException e) {
+            Log.e(TAG, "读取MediaStore失败，URI: " + uri, e);
+            StorageMetrics.increment(StorageMetrics.Counter.READ_FAILURE);
+        } catch (SecurityException e) {
+            Log.e(TAG, "读取MediaStore时发生安全异常，可能需要请求权限", e);
+            StorageMetrics.increment(StorageMetrics.Counter.READ_FAILURE);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "读取MediaStore时发生异常，URI: " + uri, e);
+            StorageMetrics.increment(StorageMetrics.Counter.READ_FAILURE);
+        }
+        // 文件已在索引中但无法通过URI读取，尝试直接读取已知文件
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "MediaStore读取失败，尝试直接读取已知路径的文件");
+        }
+        return readFallback(context);
+    }
+
+    /**
+     * 读取并解码文件内容，超过阈值时通过FileChannel内存映射读取
+     */
+    private static String readStoredFile(File file, long size) throws IOException {
+        long start = StorageMetrics.start();
+        if (size >= mappedReadThreshold) {
+            try (FileInputStream fis = new FileInputStream(file);
+                 FileChannel channel = fis.getChannel()) {
+                StorageMetrics.record(StorageMetrics.Stage.READ_OPEN, start);
+                if (StorageDiagnostics.verbose()) {
+                    Log.d(TAG, "使用内存映射读取文件，大小: " + size + " 字节");
+                }
+                return decodeMapped(channel);
+            }
+        }
+        InputStream is = new FileInputStream(file);
+        StorageMetrics.record(StorageMetrics.Stage.READ_OPEN, start);
+        return decodeStream(is, size);
+    }
+
+    /**
+     * 读取并解码URI对应的内容，超过阈值时通过文件描述符内存映射读取，无法打开时返回null
+     */
+    private static String readStoredUri(ContentResolver resolver, Uri uri, long size) throws IOException {
+        long start = StorageMetrics.start();
+        if (size >= mappedReadThreshold) {
+            ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r");
+            if (pfd != null) {
+                try (FileInputStream fis = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+                     FileChannel channel = fis.getChannel()) {
+                    StorageMetrics.record(StorageMetrics.Stage.READ_OPEN, start);
+                    if (StorageDiagnostics.verbose()) {
+                        Log.d(TAG, "使用内存映射读取URI，大小: " + size + " 字节");
+                    }
+                    return decodeMapped(channel);
+                }
+            }
+        }
+        InputStream is = resolver.openInputStream(uri);
+        StorageMetrics.record(StorageMetrics.Stage.READ_OPEN, start);
+        return is == null ? null : decodeStream(is, size);
+    }
+
+    private static String decodeMapped(FileChannel channel) throws IOException {
+        long start = StorageMetrics.start();
+        String decoded = AndroidBase64Engine.PIPELINE.readMappedString(channel);
+        StorageMetrics.record(StorageMetrics.Stage.READ_DECODE, start);
+        return decoded;
+    }
+
+    /**
+     * 批量读取时分别统计读取和解码耗时，流式读取时两者合并记为解码
+     */
+    private static String decodeStream(InputStream is, long size) throws IOException {
+        long start = StorageMetrics.start();
+        if (size <= 0 || size > StoragePipeline.BULK_READ_LIMIT) {
+            String decoded = AndroidBase64Engine.PIPELINE.readString(is, size);
+            StorageMetrics.record(StorageMetrics.Stage.READ_DECODE, start);
+            return decoded;
+        }
+        byte[] stored = StorageStreams.readAll(is, size);
+        StorageMetrics.record(StorageMetrics.Stage.READ_IO, start);
+        start = StorageMetrics.start();
+        String decoded = AndroidBase64Engine.PIPELINE.decodeString(stored);
+        StorageMetrics.record(StorageMetrics.Stage.READ_DECODE, start);
+        return decoded;
     }
 
     /**
      * 读取外部存储的字符串，自动Base64解码，兼容所有Android主流版本
      * 优化后可以解决应用卸载重装后UID变化导致无法访问文件的问题
+     * 存在增量日志时在快照上重放
      */
     public static String readStringFromExternalStorage(Context context) {
-        Log.d(TAG, "开始从外部存储读取数据");
-        Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT);
+        String pending = WRITE_BEHIND.pending();
+        if (pending != null) {
+            // 延迟合并写入中尚未写入的内容就是最新值
+            return pending;
+        }
+        StorageLock lock = lock(context);
+        lock.lockRead();
+        long start = StorageMetrics.start();
+        try {
+            String snapshot = readSnapshot(context);
+            if (snapshot == null || !SysdataJournal.exists()) {
+                return snapshot;
+            }
+            return replayJournal(context, snapshot).value;
+        } finally {
+            StorageMetrics.record(StorageMetrics.Stage.READ, start);
+            lock.unlockRead();
+        }
+    }
+
+    private static SysdataJournal.Replay replayJournal(Context context, String snapshot) {
+        long start = StorageMetrics.start();
+        SysdataJournal.Replay replay = SysdataJournal.replay(context, snapshot);
+        StorageMetrics.record(StorageMetrics.Stage.JOURNAL_REPLAY, start);
+        return replay;
+    }
+
+    /**
+     * MediaStore中找不到或读取失败时，直接读取已知路径的文件
+     */
+    private static String readFallback(Context context) {
+        StorageMetrics.increment(StorageMetrics.Counter.FALLBACK_EXISTING_FILE);
+        long start = StorageMetrics.start();
+        String result = tryReadExistingFile(context);
+        StorageMetrics.record(StorageMetrics.Stage.READ_FALLBACK, start);
+        return result;
+    }
+
+    private static String readSnapshot(Context context) {
+        String chunked = readChunkedString(context);
+        if (chunked != null) {
+            return chunked;
+        }
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "开始从外部存储读取数据");
+            Log.d(TAG, "当前Android版本: " + Build.VERSION.SDK_INT);
+        }
         
-        String encoded = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
             // Android 10+，使用MediaStore API
-            Log.d(TAG, "使用MediaStore API读取数据");
-            encoded = readStringFromMediaStore(context);
-            if (encoded != null) {
-                Log.d(TAG, "从MediaStore成功读取数据，长度: " + encoded.length() + " 字符");
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "使用MediaStore API读取数据");
+            }
+            String result = readStringFromMediaStore(context);
+            if (result != null) {
+                if (StorageDiagnostics.verbose()) {
+                    Log.d(TAG, "从MediaStore成功读取数据，长度: " + result.length() + " 字符");
+                }
             } else {
+                // readStringFromMediaStore已经尝试过直接读取已知文件，这里不再重复
                 Log.e(TAG, "从MediaStore读取数据失败，返回null");
-                
-                // 如果MediaStore读取失败，尝试直接读取已知文件
-                Log.d(TAG, "MediaStore读取失败，尝试直接读取已知路径的文件");
-                encoded = tryReadExistingFile(context);
-                if (encoded != null) {
-                    Log.d(TAG, "成功直接读取已知文件");
-                }
             }
-            return encoded == null ? null : decodeBase64(encoded);
+            return result;
         } else {
             // Android 9及以下，直接读取文件
             File externalStorage = Environment.getExternalStorageDirectory();
-            Log.d(TAG, "外部存储根目录: " + externalStorage.getAbsolutePath());
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "外部存储根目录: " + externalStorage.getAbsolutePath());
+            }
             
             File dir = new File(externalStorage, HIDDEN_DIR);
             File file = new File(dir, FILE_NAME_ANDROID10);
             
-            Log.d(TAG, "尝试读取文件: " + file.getAbsolutePath() + "，文件是否存在: " + file.exists());
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "尝试读取文件: " + file.getAbsolutePath() + "，文件是否存在: " + file.exists());
+            }
             
             if (!file.exists()) {
                 Log.e(TAG, "文件不存在: " + file.getAbsolutePath());
                 return null;
             }
             
-            try (FileInputStream fis = new FileInputStream(file);
-                 InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
-                 BufferedReader reader = new BufferedReader(isr)) {
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line).append("\n");
+            String cacheKey = file.getAbsolutePath();
+            long size = file.length();
+            long modified = file.lastModified();
+            String cached = StorageValueCache.get(cacheKey, size, modified);
+            if (cached != null) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "文件未变化，使用缓存内容: " + cacheKey);
+                }
+                StorageMetrics.increment(StorageMetrics.Counter.CACHE_HIT);
+                return cached;
+            }
+            long generation = StorageValueCache.generation();
+            
+            try {
+                String decoded = readStoredFile(file, size);
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "成功从文件读取数据，文件大小: " + size + " 字节，解码后长度: " + decoded.length() + " 字符");
                 }
-                if (sb.length() > 0) sb.setLength(sb.length() - 1);
-                
-                Log.d(TAG, "成功从文件读取数据，文件大小: " + file.length() + " 字节，读取内容长度: " + sb.length() + " 字符");
                 
-                return decodeBase64(sb.toString());
+                StorageValueCache.put(generation, cacheKey, size, modified, decoded);
+                return decoded;
             } catch (IOException e) {
                 Log.e(TAG, "读取文件失败: " + file.getAbsolutePath(), e);
+                StorageMetrics.increment(StorageMetrics.Counter.READ_FAILURE);
                 return null;
             }
         }
     }
 
     /**
-     * 尝试扫描媒体文件，确保MediaStore能识别到文件
-     * 特别是应用卸载重装后，需要重新扫描
+     * 异步操作结果回调，总是在主线程执行
      */
-    private static void scanMediaFile(Context context) {
-        try {
-            File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
-            File targetDir = new File(downloadDir, HIDDEN_DIR);
-            File targetFile = new File(targetDir, FILE_NAME_ANDROID11);
-            
-            Log.d(TAG, "尝试扫描文件: " + targetFile.getAbsolutePath() + "，文件是否存在: " + targetFile.exists());
-            
-            if (targetFile.exists()) {
-                MediaScannerConnection.scanFile(
-                    context,
-                    new String[] { targetFile.getAbsolutePath() },
-                    new String[] { "text/plain" },
-                    (path, uri) -> {
-                        if (uri != null) {
-                            Log.d(TAG, "媒体扫描完成，路径: " + path + "，URI: " + uri);
-                        } else {
-                            Log.e(TAG, "媒体扫描失败，路径: " + path);
-                        }
-                    }
-                );
-            } else {
-                Log.d(TAG, "扫描目标文件不存在: " + targetFile.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "扫描媒体文件时发生异常", e);
-        }
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /**
+     * 监听保存内容的变化，开始后先回调一次当前值，之后内容变化时回调新值，listener总在主线程执行
+     * 同时覆盖ExternalStorageManager的保存位置，回调的是所有位置中最新的内容
+     * 不再需要时调用返回值的stop()
+     */
+    public static StorageObserver observe(Context context, StorageObserver.Listener listener) {
+        StorageObserver observer = new StorageObserver(context, listener);
+        observer.start();
+        return observer;
+    }
+
+    /**
+     * 异步保存字符串到外部存储，I/O在存储线程池执行，callback在主线程回调
+     * 可以在主线程直接调用，返回的Future可用于取消或阻塞等待结果
+     */
+    public static Future<Boolean> saveStringToExternalStorageAsync(Context context, final String data,
+                                                                   Callback<Boolean> callback) {
+        final Context appContext = context.getApplicationContext();
+        return StorageExecutors.submit(() -> saveStringToExternalStorage(appContext, data), false, callback);
+    }
+
+    /**
+     * 异步读取外部存储的字符串，I/O在存储线程池执行，callback在主线程回调
+     * 读取失败时回调null
+     */
+    public static Future<String> readStringFromExternalStorageAsync(Context context, Callback<String> callback) {
+        final Context appContext = context.getApplicationContext();
+        return StorageExecutors.submit(() -> readStringFromExternalStorage(appContext), null, callback);
+    }
+
+    /**
+     * Android 10+通过MediaStore保存的数据文件的实际路径
+     */
+    private static File mediaStoreFile() {
+        File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+        return new File(new File(downloadDir, HIDDEN_DIR), FILE_NAME_ANDROID11);
     }
 
     /**
@@ -548,6 +1544,21 @@ public class ExternalStorageUtils {
         }
     }
     
+    /**
+     * 输出URI对应的实际文件路径，需要额外查询一次DATA列，只在VERBOSE下执行
+     */
+    private static void logFilePath(Context context, Uri uri) {
+        if (!StorageDiagnostics.verbose()) {
+            return;
+        }
+        String filePath = getPathFromUri(context, uri);
+        if (filePath != null) {
+            Log.d(TAG, "文件实际路径: " + filePath);
+        } else {
+            Log.d(TAG, "无法获取文件实际路径，只有URI: " + uri);
+        }
+    }
+
     /**
      * 尝试从Uri获取实际文件路径
      */
@@ -583,15 +1594,85 @@ public class ExternalStorageUtils {
         }
     }
 
-    // Base64解码
-    private static String decodeBase64(String encoded) {
+    /**
+     * 流式读取，返回按存储格式解码后的原始内容流，调用方负责关闭
+     * 文件不存在或无法访问时返回null；读取返回的流时不持有存储锁，同时保存可能读到不完整的内容
+     */
+    public static InputStream openRead(Context context) {
+        if (WRITE_BEHIND.pending() != null || SysdataJournal.exists()) {
+            // 存在待写内容或增量日志时，必须按字符串读取才是最新内容
+            String value = readStringFromExternalStorage(context);
+            return value == null ? null : new ByteArrayInputStream(value.getBytes(StandardCharsets.UTF_8));
+        }
+        InputStream raw = openRawInput(context);
+        if (raw == null) {
+            return null;
+        }
         try {
-            byte[] decoded = Base64.decode(encoded, Base64.DEFAULT);
-            String result = new String(decoded, StandardCharsets.UTF_8);
-            Log.d(TAG, "Base64解码成功，解码前长度: " + encoded.length() + "，解码后长度: " + result.length());
-            return result;
-        } catch (Exception e) {
-            Log.e(TAG, "Base64解码失败", e);
+            return AndroidBase64Engine.PIPELINE.openStored(raw);
+        } catch (IOException e) {
+            Log.e(TAG, "读取文件头失败", e);
+            try {
+                raw.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 读取保存的原始字节，二进制格式下不经过任何文本解码，文件不存在或读取失败时返回null
+     */
+    public static byte[] readBytes(Context context) {
+        if (WRITE_BEHIND.pending() != null || SysdataJournal.exists()) {
+            String value = readStringFromExternalStorage(context);
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+        StorageLock lock = lock(context);
+        lock.lockRead();
+        try {
+            InputStream raw = openRawInput(context);
+            if (raw == null) {
+                return null;
+            }
+            return AndroidBase64Engine.PIPELINE.readBytes(raw, SYSDATA_FILE.length(context));
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "读取文件失败", e);
+            return null;
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    private static InputStream openRawInput(Context context) {
+        byte[] chunked = readChunked(context);
+        if (chunked != null) {
+            return new ByteArrayInputStream(chunked);
+        }
+        try {
+            File file;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                MediaStoreLocator.FileInfo info = MediaStoreLocator.locate(
+                        context, MediaStore.Downloads.EXTERNAL_CONTENT_URI, MEDIA_RELATIVE_PATH, FILE_NAME_ANDROID11);
+                if (info != null) {
+                    lastSavedFileUri = info.uri;
+                    try {
+                        InputStream is = context.getContentResolver().openInputStream(info.uri);
+                        if (is != null) {
+                            return is;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        Log.e(TAG, "打开MediaStore输入流失败，URI: " + info.uri, e);
+                    }
+                }
+                File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+                file = new File(new File(downloadDir, HIDDEN_DIR), FILE_NAME_ANDROID11);
+            } else {
+                file = new File(new File(Environment.getExternalStorageDirectory(), HIDDEN_DIR), FILE_NAME_ANDROID10);
+            }
+            return file.exists() ? new FileInputStream(file) : null;
+        } catch (IOException e) {
+            Log.e(TAG, "打开文件输入流失败", e);
             return null;
         }
     }
@@ -44,6 +44,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // 按构建类型设置存储诊断日志的默认级别
+        ExternalStorageUtils.initDiagnostics();
         setContentView(R.layout.activity_main);
 
         inputBox = findViewById(R.id.inputBox);
@@ -110,32 +112,47 @@ public class MainActivity extends AppCompatActivity {
     }
     
     /**
-     * 保存文本到外部存储
+     * 保存文本到外部存储，I/O在后台线程执行
      */
     private void saveText(String text) {
-        boolean success = ExternalStorageUtils.saveStringToExternalStorage(this, text);
-        if (success) {
-            Toast.makeText(this, "文本已成功保存到外部存储", Toast.LENGTH_SHORT).show();
-        } else {
-            // 如果保存失败，可能是权限问题，尝试请求权限
-            requestWritePermissionIfNeeded();
-        }
+        ExternalStorageUtils.saveStringToExternalStorageAsync(this, text, success -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (success) {
+                Toast.makeText(this, "文本已成功保存到外部存储", Toast.LENGTH_SHORT).show();
+            } else {
+                // 如果保存失败，可能是权限问题，尝试请求权限
+                requestWritePermissionIfNeeded();
+            }
+        });
     }
     
     /**
-     * 从外部存储加载文本
+     * 从外部存储加载文本，I/O在后台线程执行
      */
     private void loadText() {
-        String loadedText = ExternalStorageUtils.readStringFromExternalStorage(this);
-        if (loadedText != null) {
-            inputBox.setText(loadedText);
-            Toast.makeText(this, "文本已成功从外部存储加载", Toast.LENGTH_SHORT).show();
-        } else {
-            // 如果加载失败，可能是权限问题，尝试请求权限
-            requestWritePermissionIfNeeded();
-        }
+        ExternalStorageUtils.readStringFromExternalStorageAsync(this, loadedText -> {
+            if (isFinishing() || isDestroyed()) {
+                return;
+            }
+            if (loadedText != null) {
+                inputBox.setText(loadedText);
+                Toast.makeText(this, "文本已成功从外部存储加载", Toast.LENGTH_SHORT).show();
+            } else {
+                // 如果加载失败，可能是权限问题，尝试请求权限
+                requestWritePermissionIfNeeded();
+            }
+        });
     }
     
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // 离开前台时写入延迟合并中尚未保存的内容
+        ExternalStorageUtils.flushAsync();
+    }
+
     /**
      * 如果需要，请求文件写入权限
      */
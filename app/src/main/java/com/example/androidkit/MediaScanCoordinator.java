@@ -0,0 +1,133 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 协调数据文件的媒体扫描，仅用于Android 10+
+ * 只在MediaStore查询找不到文件时才扫描，同一文件同时只有一次扫描，调用方可以限时等待扫描完成后再查询；
+ * 进程内记住已被索引的文件，文件未变化时也不会重复扫描
+ */
+final class MediaScanCoordinator {
+    private static final String TAG = "wzy-MediaScan";
+
+    // 进程内已确认在MediaStore中有对应行的文件
+    private static final ConcurrentHashMap<String, Boolean> INDEXED = new ConcurrentHashMap<>();
+    // 正在进行的扫描，同一文件的调用方等待同一次扫描
+    private static final ConcurrentHashMap<String, Scan> IN_FLIGHT = new ConcurrentHashMap<>();
+    // 最近一次完成的扫描，文件大小和修改时间不变时直接复用其结果
+    private static final ConcurrentHashMap<String, Scan> COMPLETED = new ConcurrentHashMap<>();
+
+    private MediaScanCoordinator() {
+    }
+
+    private static final class Scan {
+        final long size;
+        final long modified;
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Uri uri;
+
+        Scan(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean matches(File file) {
+            return size == file.length() && modified == file.lastModified();
+        }
+    }
+
+    /**
+     * 查询已找到文件时调用，之后不再为该文件扫描
+     */
+    static void markIndexed(File file) {
+        INDEXED.put(file.getAbsolutePath(), Boolean.TRUE);
+    }
+
+    /**
+     * 查询找不到文件时调用，文件之前已被索引时说明行被删除，例如被其他应用删除，需要重新扫描
+     */
+    static void forget(File file) {
+        String path = file.getAbsolutePath();
+        if (INDEXED.remove(path) != null) {
+            COMPLETED.remove(path);
+        }
+    }
+
+    /**
+     * 扫描文件并最多等待timeoutMillis，返回扫描得到的URI
+     * 文件未变化时直接返回上次扫描的结果；文件已被索引时不扫描直接返回null，调用方应直接查询；
+     * 文件不存在、扫描失败或超时也返回null
+     * 会阻塞调用线程，不要在主线程调用
+     */
+    static Uri scanAndWait(Context context, File file, long timeoutMillis) {
+        String path = file.getAbsolutePath();
+        if (!file.exists()) {
+            return null;
+        }
+        Scan completed = COMPLETED.get(path);
+        if (completed != null && completed.matches(file)) {
+            // 文件未变化，再扫描结果也一样
+            return completed.uri;
+        }
+        if (INDEXED.containsKey(path)) {
+            return null;
+        }
+
+        Scan scan = new Scan(file.length(), file.lastModified());
+        Scan existing = IN_FLIGHT.putIfAbsent(path, scan);
+        if (existing != null) {
+            scan = existing;
+        } else {
+            start(context.getApplicationContext(), path, scan);
+        }
+
+        try {
+            if (!scan.done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "等待媒体扫描超时: " + path);
+                }
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return scan.uri;
+    }
+
+    private static void start(Context context, final String path, final Scan scan) {
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "开始扫描文件: " + path);
+        }
+        try {
+            MediaScannerConnection.scanFile(context, new String[]{path}, new String[]{"text/plain"},
+                    (scannedPath, uri) -> finish(path, scan, uri));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "启动媒体扫描失败: " + path, e);
+            finish(path, scan, null);
+        }
+    }
+
+    private static void finish(String path, Scan scan, Uri uri) {
+        scan.uri = uri;
+        if (uri != null) {
+            INDEXED.put(path, Boolean.TRUE);
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "媒体扫描完成，路径: " + path + "，URI: " + uri);
+            }
+        } else {
+            Log.e(TAG, "媒体扫描失败，路径: " + path);
+        }
+        COMPLETED.put(path, scan);
+        IN_FLIGHT.remove(path, scan);
+        scan.done.countDown();
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.androidkit;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 通过MediaStore访问Download集合中的文件，仅用于Android 10+
+ * 通过URI无法访问时（例如重装后行的所有者变化）回退直接访问文件
+ */
+final class MediaStoreBackend implements StorageBackend {
+    private static final String TAG = "wzy-MediaStoreBackend";
+
+    private final Context context;
+    private final String relativePath;
+    private final String displayName;
+    private final String mimeType;
+    private final LegacyFileBackend fallback;
+
+    /**
+     * @param relativePath 以"/"结尾，例如"Download/Android/syskit/"
+     * @param fallback     文件在文件系统中的实际位置
+     */
+    MediaStoreBackend(Context context, String relativePath, String displayName, String mimeType,
+                      LegacyFileBackend fallback) {
+        this.context = context;
+        this.relativePath = relativePath;
+        this.displayName = displayName;
+        this.mimeType = mimeType;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public InputStream openInput() throws IOException {
+        MediaStoreLocator.FileInfo info = locate();
+        if (info != null) {
+            try {
+                InputStream is = context.getContentResolver().openInputStream(info.uri);
+                if (is != null) {
+                    return is;
+                }
+            } catch (FileNotFoundException | SecurityException e) {
+                // 重装后行的所有者变化时无法通过URI读取，回退直接读取文件
+                Log.e(TAG, "打开MediaStore输入流失败，URI: " + info.uri, e);
+            }
+        }
+        return fallback.openInput();
+    }
+
+    @Override
+    public OutputStream openOutput(boolean append) throws IOException {
+        Uri uri = locateOrCreate();
+        OutputStream os = context.getContentResolver().openOutputStream(uri, append ? "wa" : "wt");
+        if (os == null) {
+            throw new IOException("无法打开输出流，URI: " + uri);
+        }
+        return os;
+    }
+
+    /**
+     * 先写入IS_PENDING=1的新行，写完后发布新行并记住它的URI，确认发布成功后才删除旧行，最后把新行改回原文件名
+     * 发布失败或旧行无法删除时（例如属于卸载前的应用）删除新行并抛出异常，原文件保持不变
+     * 发布和改名不能合并为删除旧行之后的一次更新：那样删除旧行到发布之间只剩未发布的行，
+     * 进程此时被杀死时MediaStore会隐藏并清理它，内容随之丢失；因此旧行存在时每次保存会产生插入、发布、
+     * 删除和改名四次变更通知，第一次保存或发布后文件名没有变化时省去改名，只有两次
+     */
+    @Override
+    public void replace(PayloadWriter writer) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        MediaStoreLocator.FileInfo old = locate();
+
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
+        values.put(MediaStore.MediaColumns.IS_PENDING, 1);
+        Uri staged = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        if (staged == null) {
+            throw new IOException("无法创建暂存文件: " + relativePath + displayName);
+        }
+
+        boolean published = false;
+        try {
+            try (OutputStream os = resolver.openOutputStream(staged, "w")) {
+                if (os == null) {
+                    throw new IOException("无法打开输出流，URI: " + staged);
+                }
+                writer.writeTo(os);
+            }
+            // 旧行还在时发布的新行会被MediaStore改名为"sysdata (1).txt"，删除旧行后再改回原文件名
+            ContentValues publish = new ContentValues();
+            publish.put(MediaStore.MediaColumns.IS_PENDING, 0);
+            if (resolver.update(staged, publish, null, null) != 1) {
+                throw new IOException("无法发布暂存文件，URI: " + staged);
+            }
+            // 删除旧行之后、改回原文件名之前进程被杀死时，新行是唯一的副本，先记住它的URI才能按原文件名找到
+            MediaStoreLocator.remember(context, relativePath, displayName, staged);
+            if (old != null && resolver.delete(old.uri, null, null) <= 0) {
+                throw new IOException("无法删除旧文件，URI: " + old.uri);
+            }
+            published = true;
+            if (!displayName.equals(queryDisplayName(resolver, staged))) {
+                ContentValues rename = new ContentValues();
+                rename.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+                if (resolver.update(staged, rename, null, null) != 1) {
+                    // 内容已经是新的，只是文件名带了序号，记住URI后仍能直接访问
+                    Log.e(TAG, "新文件改回原文件名失败，URI: " + staged);
+                }
+            }
+        } finally {
+            if (!published) {
+                try {
+                    resolver.delete(staged, null, null);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "删除暂存文件失败，URI: " + staged, e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        MediaStoreLocator.FileInfo info = locate();
+        return info != null ? info.size : fallback.length();
+    }
+
+    @Override
+    public boolean delete() {
+        MediaStoreLocator.FileInfo info = locate();
+        if (info != null) {
+            try {
+                return context.getContentResolver().delete(info.uri, null, null) > 0;
+            } catch (SecurityException e) {
+                Log.e(TAG, "删除MediaStore文件失败，URI: " + info.uri, e);
+            }
+        }
+        return fallback.delete();
+    }
+
+    /**
+     * 需要查询一次MediaStore，只在诊断日志中使用
+     */
+    @Override
+    public String describe() {
+        MediaStoreLocator.FileInfo info = locate();
+        return (info != null ? info.uri.toString() : "MediaStore中没有该文件") + "，实际路径: " + fallback.describe();
+    }
+
+    /**
+     * 查询行当前的文件名，查询失败时返回null
+     */
+    private static String queryDisplayName(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{MediaStore.MediaColumns.DISPLAY_NAME},
+                null, null, null)) {
+            return cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "查询文件名失败，URI: " + uri, e);
+            return null;
+        }
+    }
+
+    private MediaStoreLocator.FileInfo locate() {
+        return MediaStoreLocator.locate(context, MediaStore.Downloads.EXTERNAL_CONTENT_URI, relativePath, displayName);
+    }
+
+    private Uri locateOrCreate() throws IOException {
+        MediaStoreLocator.FileInfo info = locate();
+        if (info != null) {
+            return info.uri;
+        }
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
+        Uri uri = context.getContentResolver().insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            throw new IOException("无法创建文件: " + relativePath + displayName);
+        }
+        MediaStoreLocator.remember(context, relativePath, displayName, uri);
+        return uri;
+    }
+}
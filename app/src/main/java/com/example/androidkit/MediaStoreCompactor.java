@@ -0,0 +1,149 @@
+package com.example.androidkit;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 清理MediaStore中重复的数据文件行，仅用于Android 10+
+ * 每次保存都insert时，MediaStore会把同名文件依次命名为"sysdata (1)"、"sysdata (2)"……
+ * 这里按位置找出全部同名和被重命名的行，只保留最新的一行，其余在一次批量操作中删除
+ */
+final class MediaStoreCompactor {
+    private static final String TAG = "wzy-MediaStoreCompactor";
+
+    private static final String[] PROJECTION = {
+            MediaStore.MediaColumns._ID,
+            MediaStore.MediaColumns.DISPLAY_NAME
+    };
+
+    private MediaStoreCompactor() {
+    }
+
+    /**
+     * 清理全部已知位置的重复行，返回删除的行数
+     * 会执行I/O，不要在主线程调用
+     */
+    static int compact(Context context) {
+        int reclaimed = 0;
+        for (StorageLocationResolver.Location location : StorageLocationResolver.Location.values()) {
+            if (location.relativePath != null) {
+                reclaimed += compact(context, location.relativePath, location.displayName);
+            }
+        }
+        if (StorageDiagnostics.summary()) {
+            Log.d(TAG, "重复行清理完成，删除行数: " + reclaimed);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * 清理relativePath下displayName的重复行，保留修改时间最新的一行并恢复为原文件名
+     * 持有存储写锁，清理过程中不会有保存或读取，不会删掉正在暂存发布的行
+     */
+    static int compact(Context context, String relativePath, String displayName) {
+        StorageLock lock = ExternalStorageUtils.lock(context);
+        lock.lockWrite();
+        try {
+            return compactLocked(context, relativePath, displayName);
+        } finally {
+            lock.unlockWrite();
+        }
+    }
+
+    private static int compactLocked(Context context, String relativePath, String displayName) {
+        ContentResolver resolver = context.getContentResolver();
+        Uri collection = MediaStore.Files.getContentUri("external");
+        int dot = displayName.lastIndexOf('.');
+        String base = dot > 0 ? displayName.substring(0, dot) : displayName;
+        String extension = dot > 0 ? displayName.substring(dot) : "";
+        String selection = MediaStore.MediaColumns.RELATIVE_PATH + "=? AND (" +
+                MediaStore.MediaColumns.DISPLAY_NAME + "=? OR " +
+                MediaStore.MediaColumns.DISPLAY_NAME + " LIKE ?)";
+        String[] args = {relativePath, displayName, base + " (%)" + extension};
+        // LIKE也会匹配"sysdata (backup).txt"这类用户自己的文件，只处理MediaStore加上的数字序号
+        Pattern renamed = Pattern.compile(Pattern.quote(base) + " \\(\\d+\\)" + Pattern.quote(extension));
+
+        Uri keep = null;
+        String keepName = null;
+        List<Uri> duplicates = new ArrayList<>();
+        try (Cursor cursor = resolver.query(collection, PROJECTION, selection, args,
+                MediaStore.MediaColumns.DATE_MODIFIED + " DESC, " + MediaStore.MediaColumns._ID + " DESC")) {
+            if (cursor == null) {
+                return 0;
+            }
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                if (!displayName.equals(name) && (name == null || !renamed.matcher(name).matches())) {
+                    continue;
+                }
+                Uri uri = ContentUris.withAppendedId(collection, cursor.getLong(0));
+                if (keep == null) {
+                    keep = uri;
+                    keepName = name;
+                } else {
+                    duplicates.add(uri);
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "查询重复行失败: " + relativePath + displayName, e);
+            return 0;
+        }
+        if (duplicates.isEmpty()) {
+            return 0;
+        }
+
+        int reclaimed = deleteAll(resolver, duplicates);
+        if (reclaimed == duplicates.size() && !displayName.equals(keepName)) {
+            // 保留的是被重命名的行，改回原文件名，之后按文件名查找才能找到
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.DISPLAY_NAME, displayName);
+            try {
+                resolver.update(keep, values, null, null);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "恢复文件名失败: " + keep, e);
+            }
+        }
+        MediaStoreLocator.remember(context, relativePath, displayName, keep);
+        return reclaimed;
+    }
+
+    /**
+     * 一次批量删除，部分行不属于当前应用时整批会失败，此时逐行删除并跳过无权删除的行
+     */
+    private static int deleteAll(ContentResolver resolver, List<Uri> uris) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(uris.size());
+        for (Uri uri : uris) {
+            operations.add(ContentProviderOperation.newDelete(uri).build());
+        }
+        try {
+            int deleted = 0;
+            for (ContentProviderResult result : resolver.applyBatch(MediaStore.AUTHORITY, operations)) {
+                deleted += result.count == null ? 0 : result.count;
+            }
+            return deleted;
+        } catch (Exception e) {
+            Log.e(TAG, "批量删除失败，改为逐行删除", e);
+        }
+        int deleted = 0;
+        for (Uri uri : uris) {
+            try {
+                deleted += resolver.delete(uri, null, null);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "删除重复行失败: " + uri, e);
+            }
+        }
+        return deleted;
+    }
+}
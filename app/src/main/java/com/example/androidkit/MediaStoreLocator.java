@@ -0,0 +1,101 @@
+package com.example.androidkit;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * 定位MediaStore中的数据文件，仅用于Android 10+
+ * 已解析的URI持久化到SharedPreferences，重启后先用一次按_ID的查询校验，
+ * 行不存在时才回退到按文件名和相对路径的查找
+ */
+final class MediaStoreLocator {
+    private static final String TAG = "wzy-MediaStoreLocator";
+    private static final String PREFS_NAME = "syskit_storage";
+    private static final String KEY_PREFIX_URI = "uri_";
+
+    // 一次查询返回读路径需要的全部信息
+    private static final String[] PROJECTION = {
+            MediaStore.MediaColumns._ID,
+            MediaStore.MediaColumns.SIZE,
+            MediaStore.MediaColumns.DATE_MODIFIED
+    };
+
+    private MediaStoreLocator() {
+    }
+
+    /**
+     * MediaStore中一个文件行的定位结果
+     */
+    static final class FileInfo {
+        final Uri uri;
+        final long size;
+        final long modified;
+
+        FileInfo(Uri uri, long size, long modified) {
+            this.uri = uri;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * 查找relativePath下名为displayName的文件，找不到返回null
+     * relativePath以"/"结尾，例如"Download/Android/syskit/"
+     */
+    static FileInfo locate(Context context, Uri collection, String relativePath, String displayName) {
+        ContentResolver resolver = context.getContentResolver();
+        String key = KEY_PREFIX_URI + relativePath + displayName;
+        SharedPreferences prefs = prefs(context);
+
+        String cachedUri = prefs.getString(key, null);
+        if (cachedUri != null) {
+            FileInfo info = queryRow(resolver, Uri.parse(cachedUri), null, null);
+            if (info != null) {
+                return info;
+            }
+            if (StorageDiagnostics.verbose()) {
+                Log.d(TAG, "缓存的URI已失效: " + cachedUri);
+            }
+            prefs.edit().remove(key).apply();
+        }
+
+        String selection = MediaStore.MediaColumns.RELATIVE_PATH + "=? AND " +
+                MediaStore.MediaColumns.DISPLAY_NAME + "=?";
+        FileInfo info = queryRow(resolver, collection, selection, new String[]{relativePath, displayName});
+        if (info != null) {
+            prefs.edit().putString(key, info.uri.toString()).apply();
+        }
+        return info;
+    }
+
+    /**
+     * 记录新插入行的URI，下次定位直接按_ID校验
+     */
+    static void remember(Context context, String relativePath, String displayName, Uri uri) {
+        prefs(context).edit().putString(KEY_PREFIX_URI + relativePath + displayName, uri.toString()).apply();
+    }
+
+    private static FileInfo queryRow(ContentResolver resolver, Uri uri, String selection, String[] selectionArgs) {
+        try (Cursor cursor = resolver.query(uri, PROJECTION, selection, selectionArgs, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            Uri rowUri = selection == null ? uri : ContentUris.withAppendedId(uri, cursor.getLong(0));
+            return new FileInfo(rowUri, cursor.getLong(1), cursor.getLong(2));
+        } catch (Exception e) {
+            // 行已被删除或无权访问时部分机型会抛出异常，按未找到处理
+            Log.e(TAG, "查询MediaStore失败，URI: " + uri, e);
+            return null;
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -11,6 +11,7 @@ import androidx.fragment.app.Fragment;
 public class SampleFragment extends Fragment {
 
     private TextView textView;
+    private StorageObserver storageObserver;
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -19,6 +20,22 @@ public class SampleFragment extends Fragment {
         return view;
     }
 
+    @Override
+    public void onStart() {
+        super.onStart();
+        // 可见期间实时显示保存的内容
+        storageObserver = ExternalStorageUtils.observe(requireContext(), this::updateText);
+    }
+
+    @Override
+    public void onStop() {
+        super.onStop();
+        if (storageObserver != null) {
+            storageObserver.stop();
+            storageObserver = null;
+        }
+    }
+
     public void updateText(String text) {
         if (textView != null) {
             textView.setText(text);
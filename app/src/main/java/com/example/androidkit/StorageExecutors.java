@@ -0,0 +1,145 @@
+package com.example.androidkit;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 外部存储专用的I/O线程池，保证MediaStore查询、媒体扫描和文件读写都不在主线程执行
+ * 单线程串行执行，保证先提交的保存一定先于后提交的读取完成
+ */
+final class StorageExecutors {
+    private static final String TAG = "wzy-StorageExecutors";
+    private static final int QUEUE_CAPACITY = 32; // 有界队列，防止任务无限堆积
+
+    private static final int PROBE_THREADS = 3;
+    private static final int CHUNK_THREADS = 4;
+
+    private static final ExecutorService IO_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+            threadFactory("syskit-io-"));
+
+    // 多位置并行探测和批量保存并行写出用的小线程池，与I/O线程池分开，在I/O线程中等待结果不会死锁
+    // 队列满时由调用线程直接执行
+    private static final ExecutorService PROBE_EXECUTOR = new ThreadPoolExecutor(
+            PROBE_THREADS, PROBE_THREADS, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+            threadFactory("syskit-probe-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    // 分块存储并行读写块文件用的线程池，队列满时由调用线程直接执行，同时进行的块I/O不超过线程数加调用线程
+    private static final ExecutorService CHUNK_EXECUTOR = new ThreadPoolExecutor(
+            CHUNK_THREADS, CHUNK_THREADS, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(CHUNK_THREADS),
+            threadFactory("syskit-chunk-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    static {
+        // 空闲时回收线程
+        ((ThreadPoolExecutor) IO_EXECUTOR).allowCoreThreadTimeOut(true);
+        ((ThreadPoolExecutor) PROBE_EXECUTOR).allowCoreThreadTimeOut(true);
+        ((ThreadPoolExecutor) CHUNK_EXECUTOR).allowCoreThreadTimeOut(true);
+    }
+
+    private StorageExecutors() {
+    }
+
+    /**
+     * 存储I/O线程池，Kotlin协程通过它转换为Dispatcher
+     */
+    static ExecutorService io() {
+        return IO_EXECUTOR;
+    }
+
+    /**
+     * 并行探测和批量写出用的线程池，调用方需要等待全部任务结束
+     */
+    static ExecutorService probe() {
+        return PROBE_EXECUTOR;
+    }
+
+    /**
+     * 分块存储读写块文件用的线程池，调用方需要等待全部任务结束
+     */
+    static ExecutorService chunks() {
+        return CHUNK_EXECUTOR;
+    }
+
+    /**
+     * 在I/O线程执行任务，结果通过callback回调到主线程
+     * 任务抛出异常或被线程池拒绝时，回调failureResult
+     */
+    static <T> Future<T> submit(Callable<T> task, final T failureResult,
+                                final ExternalStorageUtils.Callback<T> callback) {
+        FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                if (callback == null || isCancelled()) {
+                    return;
+                }
+                T result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Log.e(TAG, "存储任务执行失败", e);
+                    result = failureResult;
+                }
+                postResult(callback, result);
+            }
+        };
+        try {
+            IO_EXECUTOR.execute(future);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "存储任务队列已满，任务被拒绝", e);
+            future.cancel(false);
+            if (callback != null) {
+                postResult(callback, failureResult);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * 延迟delayMillis后在主线程执行task，同一个task重复安排时只保留最后一次
+     * task本身应尽快把I/O转交给存储线程池
+     */
+    static void schedule(Runnable task, long delayMillis) {
+        MAIN_HANDLER.removeCallbacks(task);
+        MAIN_HANDLER.postDelayed(task, delayMillis);
+    }
+
+    static void cancel(Runnable task) {
+        MAIN_HANDLER.removeCallbacks(task);
+    }
+
+    private static ThreadFactory threadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + count.getAndIncrement());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+    }
+
+    private static <T> void postResult(final ExternalStorageUtils.Callback<T> callback, final T result) {
+        MAIN_HANDLER.post(() -> callback.onResult(result));
+    }
+}
@@ -0,0 +1,325 @@
+package com.example.androidkit;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 在所有已知的保存位置中查找最新的有效内容
+ * ExternalStorageUtils和ExternalStorageManager历史上使用了不同的目录和文件名，
+ * 这里同时探测全部位置：MediaStore中的各位置合并为一次查询，直接文件访问的位置各自并行检查，
+ * 再按修改时间从新到旧读取，返回第一个能成功解码的内容及其所在位置；
+ * 带完整性头的位置只读取完整性头，按其中的版本号排序，不用读取内容
+ */
+public final class StorageLocationResolver {
+    private static final String TAG = "wzy-LocationResolver";
+    private static final String HIDDEN_DIR = "Android/syskit";
+    // 单个探测最多等待的时间，超时的位置视为不存在
+    private static final long PROBE_TIMEOUT_MILLIS = 3000;
+
+    /**
+     * 已知的保存位置
+     */
+    public enum Location {
+        // ExternalStorageUtils，Android 10+：Download/Android/syskit/sysdata.txt
+        DOWNLOAD_SYSKIT(Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/", "sysdata.txt"),
+        // ExternalStorageManager，Android 11+：Documents/Android/syskit/sysdata
+        DOCUMENTS_SYSKIT(Environment.DIRECTORY_DOCUMENTS + "/" + HIDDEN_DIR + "/", "sysdata"),
+        // ExternalStorageManager，Android 11+回退位置：Documents/sysdata
+        DOCUMENTS(Environment.DIRECTORY_DOCUMENTS + "/", "sysdata"),
+        // 两者共用，Android 9及以下：外部存储根目录/Android/syskit/.sysdata
+        LEGACY_HIDDEN(null, ".sysdata"),
+        // ExternalStorageUtils分块存储的清单，Android 10+：Download/Android/syskit/sysdata-manifest.txt，
+        // Android 9及以下直接访问外部存储根目录/Android/syskit/.sysdata-manifest
+        CHUNKED(Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/", "sysdata-manifest.txt");
+
+        // MediaStore中的相对路径，为null表示只能直接访问文件
+        final String relativePath;
+        final String displayName;
+
+        Location(String relativePath, String displayName) {
+            this.relativePath = relativePath;
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * 查找结果
+     */
+    public static final class Result {
+        public final Location location;
+        // 通过MediaStore读取时为对应的URI，直接读取文件时为null
+        public final Uri uri;
+        public final long modifiedMillis;
+        // 完整性头中的版本号，没有完整性头时为0
+        public final long version;
+        public final String value;
+
+        Result(Location location, Uri uri, long modifiedMillis, long version, String value) {
+            this.location = location;
+            this.uri = uri;
+            this.modifiedMillis = modifiedMillis;
+            this.version = version;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 一个可能保存了内容的位置，uri和file只有一个不为null
+     */
+    private static final class Candidate {
+        final Location location;
+        final Uri uri;
+        final File file;
+        final long size;
+        final long modifiedMillis;
+        final long version;
+
+        Candidate(Location location, Uri uri, File file, long size, long modifiedMillis, long version) {
+            this.location = location;
+            this.uri = uri;
+            this.file = file;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.version = version;
+        }
+
+        /**
+         * 排序用的新旧，版本号取自保存时的系统时间，可以与修改时间比较
+         */
+        long recency() {
+            return version > 0 ? version : modifiedMillis;
+        }
+    }
+
+    private StorageLocationResolver() {
+    }
+
+    /**
+     * 探测全部位置并返回最新的有效内容，都没有时返回null
+     * 会阻塞调用线程，不要在主线程调用
+     */
+    public static Result resolve(Context context) {
+        Context appContext = context.getApplicationContext();
+        // 持有读锁期间并行探测的线程不能再获取该锁，否则排队的写入者会造成死锁
+        StorageLock lock = ExternalStorageUtils.lock(appContext);
+        lock.lockRead();
+        try {
+            return resolveLocked(appContext);
+        } finally {
+            lock.unlockRead();
+        }
+    }
+
+    private static Result resolveLocked(Context appContext) {
+        List<Candidate> candidates = probe(appContext);
+        if (candidates == null) {
+            return null;
+        }
+        for (Candidate candidate : candidates) {
+            String value = read(appContext, candidate);
+            if (value != null) {
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "使用位置: " + candidate.location + "，修改时间: " + candidate.modifiedMillis
+                            + "，版本: " + candidate.version
+                            + "，候选数: " + candidates.size());
+                }
+                return new Result(candidate.location, candidate.uri, candidate.modifiedMillis, candidate.version, value);
+            }
+        }
+        if (StorageDiagnostics.summary()) {
+            Log.d(TAG, "所有位置都没有有效内容，候选数: " + candidates.size());
+        }
+        return null;
+    }
+
+    /**
+     * 只探测不读取，返回最新位置的标识（位置、大小和修改时间）和增量日志的大小和修改时间，都没有时返回null
+     * 日志模式下保存只追加日志，快照文件不变，所以日志也要计入
+     * 标识不变说明resolve的结果不变，用于判断是否需要重新读取
+     */
+    static String fingerprint(Context context) {
+        List<Candidate> candidates = probe(context.getApplicationContext());
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        Candidate newest = candidates.get(0);
+        File journal = SysdataJournal.localFile();
+        return newest.location + ":" + newest.uri + ":" + newest.size + ":" + newest.modifiedMillis + ":" + newest.version
+                + ":" + journal.length() + ":" + journal.lastModified();
+    }
+
+    /**
+     * 并行探测全部位置，返回按从新到旧排序的候选，线程被中断时返回null
+     */
+    private static List<Candidate> probe(final Context appContext) {
+        List<Future<List<Candidate>>> probes = new ArrayList<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            probes.add(submit(() -> queryMediaStore(appContext)));
+            // MediaStore中没有索引时仍可能直接读到文件
+            probes.add(submit(() -> probeFile(Location.DOWNLOAD_SYSKIT, new File(
+                    Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS),
+                    HIDDEN_DIR + "/" + Location.DOWNLOAD_SYSKIT.displayName))));
+        }
+        probes.add(submit(() -> probeFile(Location.LEGACY_HIDDEN, new File(
+                Environment.getExternalStorageDirectory(), HIDDEN_DIR + "/" + Location.LEGACY_HIDDEN.displayName))));
+        probes.add(submit(() -> probeFile(Location.CHUNKED, ExternalStorageUtils.chunkManifestFile())));
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (Future<List<Candidate>> probe : probes) {
+            try {
+                candidates.addAll(probe.get(PROBE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                Log.e(TAG, "探测超时，忽略该位置");
+                probe.cancel(true);
+            } catch (ExecutionException e) {
+                Log.e(TAG, "探测失败，忽略该位置", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        // 从新到旧，修改时间相同时MediaStore中的行优先
+        Collections.sort(candidates, (a, b) -> {
+            if (a.recency() != b.recency()) {
+                return a.recency() > b.recency() ? -1 : 1;
+            }
+            return Boolean.compare(a.uri == null, b.uri == null);
+        });
+        return candidates;
+    }
+
+    private static Future<List<Candidate>> submit(Callable<List<Candidate>> probe) {
+        return StorageExecutors.probe().submit(probe);
+    }
+
+    /**
+     * 一次查询MediaStore中全部位置，每个位置只保留最新的一行
+     */
+    private static List<Candidate> queryMediaStore(Context context) {
+        List<String> args = new ArrayList<>();
+        StringBuilder selection = new StringBuilder();
+        for (Location location : Location.values()) {
+            if (location.relativePath == null) {
+                continue;
+            }
+            if (selection.length() > 0) {
+                selection.append(" OR ");
+            }
+            selection.append('(').append(MediaStore.MediaColumns.RELATIVE_PATH).append("=? AND ")
+                    .append(MediaStore.MediaColumns.DISPLAY_NAME).append("=?)");
+            args.add(location.relativePath);
+            args.add(location.displayName);
+        }
+        String[] projection = {
+                MediaStore.MediaColumns._ID,
+                MediaStore.MediaColumns.RELATIVE_PATH,
+                MediaStore.MediaColumns.DISPLAY_NAME,
+                MediaStore.MediaColumns.SIZE,
+                MediaStore.MediaColumns.DATE_MODIFIED
+        };
+
+        Uri collection = MediaStore.Files.getContentUri("external");
+        List<Candidate> candidates = new ArrayList<>();
+        ContentResolver resolver = context.getContentResolver();
+        try (Cursor cursor = resolver.query(collection, projection, selection.toString(),
+                args.toArray(new String[0]), MediaStore.MediaColumns.DATE_MODIFIED + " DESC")) {
+            if (cursor == null) {
+                return candidates;
+            }
+            boolean[] found = new boolean[Location.values().length];
+            while (cursor.moveToNext()) {
+                Location location = match(cursor.getString(1), cursor.getString(2));
+                if (location == null || found[location.ordinal()]) {
+                    continue;
+                }
+                found[location.ordinal()] = true;
+                Uri uri = ContentUris.withAppendedId(collection, cursor.getLong(0));
+                // DATE_MODIFIED单位为秒
+                candidates.add(new Candidate(location, uri, null, cursor.getLong(3), cursor.getLong(4) * 1000,
+                        readVersion(context, uri, null)));
+            }
+        }
+        return candidates;
+    }
+
+    private static Location match(String relativePath, String displayName) {
+        for (Location location : Location.values()) {
+            if (location.displayName.equals(displayName) && location.relativePath != null
+                    && location.relativePath.equals(relativePath)) {
+                return location;
+            }
+        }
+        return null;
+    }
+
+    private static List<Candidate> probeFile(Location location, File file) {
+        if (!file.isFile() || !file.canRead()) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(new Candidate(location, null, file, file.length(), file.lastModified(),
+                readVersion(null, null, file)));
+    }
+
+    /**
+     * 只读取开头的完整性头，返回其中的版本号，没有完整性头或读取失败时返回0
+     */
+    private static long readVersion(Context context, Uri uri, File file) {
+        try (InputStream is = uri != null ? context.getContentResolver().openInputStream(uri) : new FileInputStream(file)) {
+            IntegrityHeader header = is == null ? null : IntegrityHeader.read(is);
+            return header == null ? 0 : header.version;
+        } catch (IOException | RuntimeException e) {
+            // 读取内容时会再次失败并记录
+            return 0;
+        }
+    }
+
+    /**
+     * 读取并解码候选位置的内容，ExternalStorageUtils的位置存在增量日志时在其上重放，失败返回null
+     */
+    private static String read(Context context, Candidate candidate) {
+        if (candidate.location == Location.CHUNKED) {
+            // 清单只记录块的哈希，内容需要按清单读取全部块
+            String value = ExternalStorageUtils.readChunkedString(context);
+            return value != null && SysdataJournal.exists() ? SysdataJournal.replay(context, value).value : value;
+        }
+        try {
+            InputStream is = candidate.uri != null
+                    ? context.getContentResolver().openInputStream(candidate.uri)
+                    : new FileInputStream(candidate.file);
+            if (is == null) {
+                return null;
+            }
+            String value = AndroidBase64Engine.PIPELINE.readString(is, candidate.size);
+            if (candidate.location != Location.DOCUMENTS_SYSKIT && candidate.location != Location.DOCUMENTS
+                    && SysdataJournal.exists()) {
+                // 日志记录了所属快照的长度和哈希，不属于该快照时会被忽略
+                value = SysdataJournal.replay(context, value).value;
+            }
+            return value;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "读取位置失败: " + candidate.location, e);
+            return null;
+        }
+    }
+}
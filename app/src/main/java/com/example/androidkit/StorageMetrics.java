@@ -0,0 +1,203 @@
+package com.example.androidkit;
+
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 存储读写各阶段的耗时统计和回退计数
+ * 每个阶段聚合为延迟直方图（p50/p95/p99），可以注册监听器获取每次的原始数据，
+ * 或定期通过snapshot获取汇总后上报到自己的统计系统
+ */
+public final class StorageMetrics {
+    private static final String TAG = "wzy-StorageMetrics";
+
+    /**
+     * 计时的阶段
+     */
+    public enum Stage {
+        // 一次完整的保存
+        SAVE,
+        // 暂存写入（写新文件并替换）
+        SAVE_STAGED,
+        // 原地写入前在MediaStore中查找或创建文件
+        SAVE_LOCATE,
+        // 原地写入：打开输出流、编码并写出
+        SAVE_WRITE,
+        // 一次批量保存多个文件
+        SAVE_BATCH,
+        // 分块保存：编码、写出变化的块并替换清单
+        SAVE_CHUNKED,
+        // 一次完整的读取
+        READ,
+        // 读取清单并并行读取、校验全部块
+        READ_CHUNKED,
+        // MediaStore中找不到文件时的媒体扫描和等待
+        READ_SCAN,
+        // 在MediaStore中查找文件
+        READ_QUERY,
+        // 通过URI获取文件实际路径，只在诊断级别为VERBOSE时执行
+        READ_PATH,
+        // 打开输入流或文件描述符
+        READ_OPEN,
+        // 批量读取文件内容，流式读取和内存映射读取时包含在READ_DECODE中
+        READ_IO,
+        // 格式识别和解码
+        READ_DECODE,
+        // MediaStore中找不到时直接读取已知路径的文件
+        READ_FALLBACK,
+        // 重放增量日志
+        JOURNAL_REPLAY
+    }
+
+    /**
+     * 回退和失败计数
+     */
+    public enum Counter {
+        // MediaStore中找不到文件，回退直接读取已知路径
+        FALLBACK_EXISTING_FILE,
+        // 暂存写入失败，回退原地写入
+        FALLBACK_IN_PLACE_WRITE,
+        // 读取结果来自进程内缓存
+        CACHE_HIT,
+        // 内容与上次保存的相同，跳过写入
+        SAVE_ELIDED,
+        SAVE_FAILURE,
+        READ_FAILURE
+    }
+
+    /**
+     * 一个阶段的统计结果，时间单位为微秒
+     */
+    public static final class StageStats {
+        public final long count;
+        public final long meanMicros;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long p99Micros;
+        public final long maxMicros;
+
+        StageStats(long count, long meanMicros, long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + meanMicros + "us, p50=" + p50Micros + "us, p95=" + p95Micros
+                    + "us, p99=" + p99Micros + "us, max=" + maxMicros + "us";
+        }
+    }
+
+    /**
+     * 某一时刻全部指标的快照
+     */
+    public static final class Snapshot {
+        public final Map<Stage, StageStats> stages;
+        public final Map<Counter, Long> counters;
+
+        Snapshot(Map<Stage, StageStats> stages, Map<Counter, Long> counters) {
+            this.stages = Collections.unmodifiableMap(stages);
+            this.counters = Collections.unmodifiableMap(counters);
+        }
+
+        @Override
+        public String toString() {
+            return "stages=" + stages + ", counters=" + counters;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[STAGES.length];
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(COUNTERS.length);
+    private static final List<StorageMetricsListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    static {
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            HISTOGRAMS[i] = new LatencyHistogram();
+        }
+    }
+
+    private StorageMetrics() {
+    }
+
+    public static void registerListener(StorageMetricsListener listener) {
+        if (listener != null) {
+            LISTENERS.add(listener);
+        }
+    }
+
+    public static void unregisterListener(StorageMetricsListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    /**
+     * 获取当前全部指标的快照
+     */
+    public static Snapshot snapshot() {
+        Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : STAGES) {
+            stages.put(stage, HISTOGRAMS[stage.ordinal()].snapshot());
+        }
+        Map<Counter, Long> counters = new EnumMap<>(Counter.class);
+        for (Counter counter : COUNTERS) {
+            counters.put(counter, COUNTS.get(counter.ordinal()));
+        }
+        return new Snapshot(stages, counters);
+    }
+
+    /**
+     * 清空全部统计，例如每次上报后调用
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (int i = 0; i < COUNTERS.length; i++) {
+            COUNTS.set(i, 0);
+        }
+    }
+
+    /**
+     * 阶段开始时调用，返回值传给record
+     */
+    static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 阶段结束时调用，记录从startNanos到现在的耗时
+     */
+    static void record(Stage stage, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        HISTOGRAMS[stage.ordinal()].record(duration);
+        for (StorageMetricsListener listener : LISTENERS) {
+            try {
+                listener.onStage(stage, duration);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "指标监听器执行失败", e);
+            }
+        }
+    }
+
+    static void increment(Counter counter) {
+        COUNTS.incrementAndGet(counter.ordinal());
+        for (StorageMetricsListener listener : LISTENERS) {
+            try {
+                listener.onCounter(counter);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "指标监听器执行失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.androidkit;
+
+/**
+ * 存储操作的指标监听器，通过StorageMetrics.registerListener注册
+ * 回调在执行存储操作的线程中同步调用，实现必须足够轻量，不要在回调中执行I/O
+ */
+public interface StorageMetricsListener {
+    /**
+     * 一个阶段执行完成
+     * @param durationNanos 耗时，纳秒
+     */
+    void onStage(StorageMetrics.Stage stage, long durationNanos);
+
+    /**
+     * 发生了一次回退或失败
+     */
+    void onCounter(StorageMetrics.Counter counter);
+}
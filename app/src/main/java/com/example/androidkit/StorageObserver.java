@@ -0,0 +1,179 @@
+package com.example.androidkit;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.os.FileObserver;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * 监听保存内容的变化，内容变化时在主线程回调最新值
+ * Android 10+监听MediaStore的Downloads集合和Documents中最新内容所在的行，Android 9及以下用FileObserver监听旧版隐藏目录；
+ * 短时间内的多次通知合并为一次检查，只有最新位置的大小或修改时间变化时才重新读取，
+ * 读取到的内容与上次相同时也不回调
+ */
+public final class StorageObserver {
+    private static final String TAG = "wzy-StorageObserver";
+    // 最后一次通知后等待的时间，期间没有新通知才检查
+    private static final long DEBOUNCE_MILLIS = 300;
+    private static final String LEGACY_DIR = "Android/syskit";
+
+    /**
+     * 内容变化回调，总是在主线程执行，开始监听后会先回调一次当前值
+     */
+    public interface Listener {
+        void onChanged(String value);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Runnable check = this::check;
+
+    // contentObserver的注册和注销由this同步
+    private ContentObserver contentObserver;
+    private FileObserver fileObserver;
+    private volatile boolean stopped = false;
+
+    // 以下字段只在存储I/O线程访问，value会在主线程回调时读取
+    private boolean loaded = false;
+    private String fingerprint = null;
+    // 单独监听的Documents中的行
+    private Uri observedRow = null;
+    private volatile String value = null;
+
+    StorageObserver(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    void start() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            synchronized (this) {
+                contentObserver = new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        onNotify();
+                    }
+                };
+                register(null);
+            }
+        } else {
+            File dir = new File(Environment.getExternalStorageDirectory(), LEGACY_DIR);
+            fileObserver = new FileObserver(dir.getAbsolutePath(),
+                    FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE | FileObserver.CREATE) {
+                @Override
+                public void onEvent(int event, String path) {
+                    onNotify();
+                }
+            };
+            fileObserver.startWatching();
+        }
+        StorageExecutors.schedule(check, 0);
+    }
+
+    /**
+     * 停止监听，之后不会再回调，可以在任意线程调用
+     */
+    public void stop() {
+        stopped = true;
+        StorageExecutors.cancel(check);
+        synchronized (this) {
+            if (contentObserver != null) {
+                context.getContentResolver().unregisterContentObserver(contentObserver);
+                contentObserver = null;
+            }
+        }
+        if (fileObserver != null) {
+            fileObserver.stopWatching();
+            fileObserver = null;
+        }
+    }
+
+    /**
+     * 暂存写入每次都会换成新的行，所以监听整个Downloads集合而不是单个URI，不再监听全部外部存储文件；
+     * Documents中的位置不属于任何集合，只监听最新内容所在的行，需要持有this
+     */
+    private void register(Uri row) {
+        ContentResolver resolver = context.getContentResolver();
+        try {
+            // 同一个ContentObserver的全部注册一起注销，再按新的行重新注册
+            resolver.unregisterContentObserver(contentObserver);
+            resolver.registerContentObserver(MediaStore.Downloads.EXTERNAL_CONTENT_URI, true, contentObserver);
+            if (row != null) {
+                resolver.registerContentObserver(row, false, contentObserver);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "注册MediaStore变化监听失败", e);
+        }
+    }
+
+    /**
+     * 最新内容在Documents中时改为监听它所在的行
+     */
+    private void observeRow(StorageLocationResolver.Result result) {
+        Uri row = null;
+        if (result != null && (result.location == StorageLocationResolver.Location.DOCUMENTS_SYSKIT
+                || result.location == StorageLocationResolver.Location.DOCUMENTS)) {
+            row = result.uri;
+        }
+        if (row == null ? observedRow == null : row.equals(observedRow)) {
+            return;
+        }
+        observedRow = row;
+        synchronized (this) {
+            if (contentObserver != null && !stopped) {
+                register(row);
+            }
+        }
+    }
+
+    private void onNotify() {
+        if (!stopped) {
+            StorageExecutors.schedule(check, DEBOUNCE_MILLIS);
+        }
+    }
+
+    private void check() {
+        if (stopped) {
+            return;
+        }
+        StorageExecutors.submit(this::refresh, Boolean.FALSE, changed -> {
+            if (changed && !stopped) {
+                listener.onChanged(value);
+            }
+        });
+    }
+
+    /**
+     * 最新位置的大小和修改时间变化时重新读取，返回是否需要回调
+     */
+    private boolean refresh() {
+        String current = StorageLocationResolver.fingerprint(context);
+        if (loaded && equals(current, fingerprint)) {
+            return false;
+        }
+        fingerprint = current;
+        StorageLocationResolver.Result result = current == null ? null : StorageLocationResolver.resolve(context);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            observeRow(result);
+        }
+        String newValue = result == null ? null : result.value;
+        boolean changed = !loaded || !equals(newValue, value);
+        loaded = true;
+        value = newValue;
+        if (changed && StorageDiagnostics.summary()) {
+            Log.d(TAG, "内容已变化，位置: " + (result == null ? null : result.location));
+        }
+        return changed;
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
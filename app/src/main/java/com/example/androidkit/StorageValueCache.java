@@ -0,0 +1,109 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程级的解码结果缓存，避免内容未变化时重复查询、读取和Base64解码
+ * 用文件大小和修改时间校验缓存是否仍然有效，MediaStore下载目录变化时整体失效
+ */
+public final class StorageValueCache {
+    private static final String TAG = "wzy-StorageValueCache";
+
+    private static final AtomicLong HIT_COUNT = new AtomicLong();
+    private static final AtomicLong MISS_COUNT = new AtomicLong();
+    // 每次失效递增，防止读取过程中发生的失效被随后的put覆盖
+    private static final AtomicLong GENERATION = new AtomicLong();
+    private static final AtomicBoolean OBSERVER_REGISTERED = new AtomicBoolean(false);
+
+    private static volatile Entry entry = null;
+
+    private StorageValueCache() {
+    }
+
+    private static final class Entry {
+        final String key;
+        final long size;
+        final long modified;
+        final String value;
+
+        Entry(String key, long size, long modified, String value) {
+            this.key = key;
+            this.size = size;
+            this.modified = modified;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 当前缓存代数，读取前获取，put时传回用于判断期间是否发生过失效
+     */
+    static long generation() {
+        return GENERATION.get();
+    }
+
+    /**
+     * 按文件标识、大小和修改时间查找缓存，全部一致才算命中
+     */
+    static String get(String key, long size, long modified) {
+        Entry current = entry;
+        if (current != null && current.key.equals(key)
+                && current.size == size && current.modified == modified) {
+            HIT_COUNT.incrementAndGet();
+            return current.value;
+        }
+        MISS_COUNT.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存，如果读取期间缓存已失效则丢弃本次结果
+     */
+    static void put(long expectedGeneration, String key, long size, long modified, String value) {
+        if (value == null || GENERATION.get() != expectedGeneration) {
+            return;
+        }
+        entry = new Entry(key, size, modified, value);
+    }
+
+    static void invalidate() {
+        GENERATION.incrementAndGet();
+        entry = null;
+    }
+
+    /**
+     * 监听MediaStore下载目录变化，任何变化都使缓存失效，只注册一次
+     */
+    static void registerObserver(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || !OBSERVER_REGISTERED.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            context.getApplicationContext().getContentResolver().registerContentObserver(
+                    MediaStore.Downloads.EXTERNAL_CONTENT_URI, true, new ContentObserver(null) {
+                        @Override
+                        public void onChange(boolean selfChange, Uri uri) {
+                            invalidate();
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e(TAG, "注册MediaStore变化监听失败", e);
+            OBSERVER_REGISTERED.set(false);
+        }
+    }
+
+    public static long getHitCount() {
+        return HIT_COUNT.get();
+    }
+
+    public static long getMissCount() {
+        return MISS_COUNT.get();
+    }
+}
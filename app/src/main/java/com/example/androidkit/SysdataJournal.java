@@ -0,0 +1,205 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * sysdata的增量日志，日志模式下保存只追加与上一次内容的差异，不再重写整个文件
+ * 日志第一条记录标明它所基于的快照（UTF-8字节数和CRC32），快照被重写后旧日志自动失效，
+ * 因此"先写快照再删日志"之间崩溃也不会重复应用增量
+ * 每条记录一行，Base64编码，格式与SyskitKeyValueStore一致
+ */
+final class SysdataJournal {
+    private static final String TAG = "wzy-SysdataJournal";
+    private static final byte OP_BASE = 'B';
+    private static final byte OP_REPLACE = 'R';
+
+    private static final SyskitFile JOURNAL_FILE = new SyskitFile("sysjournal.txt", ".sysjournal");
+
+    private SysdataJournal() {
+    }
+
+    /**
+     * 日志文件是否存在，只做一次文件状态检查，不查询MediaStore
+     */
+    static boolean exists() {
+        return localFile().exists();
+    }
+
+    /**
+     * 日志在文件系统中的实际位置
+     */
+    static File localFile() {
+        return JOURNAL_FILE.localFile();
+    }
+
+    /**
+     * 重放结果
+     */
+    static final class Replay {
+        // 应用日志后的内容
+        final String value;
+        // 日志属于当前快照且没有损坏，可以继续追加
+        final boolean appendable;
+        // 日志文件字节数
+        final int bytes;
+
+        Replay(String value, boolean appendable, int bytes) {
+            this.value = value;
+            this.appendable = appendable;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 在快照上重放日志，日志不存在、不属于该快照或读取失败时返回快照本身
+     */
+    static Replay replay(Context context, String snapshot) {
+        byte[] log;
+        try {
+            InputStream is = JOURNAL_FILE.openInput(context);
+            if (is == null) {
+                return new Replay(snapshot, true, 0);
+            }
+            log = StorageStreams.readAll(is, JOURNAL_FILE.length(context));
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "读取日志失败，只使用快照", e);
+            return new Replay(snapshot, false, 0);
+        }
+        if (log.length == 0) {
+            return new Replay(snapshot, true, 0);
+        }
+
+        StringBuilder value = null;
+        boolean intact = true;
+        int start = 0;
+        int applied = 0;
+        while (start < log.length) {
+            int end = start;
+            while (end < log.length && log[end] != '\n') {
+                end++;
+            }
+            if (end == log.length) {
+                // 最后一条记录没有换行，说明写入被中断，忽略
+                intact = false;
+                break;
+            }
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                        Base64.decode(log, start, end - start, Base64.NO_WRAP)));
+                byte op = in.readByte();
+                if (value == null) {
+                    if (op != OP_BASE || !matchesSnapshot(in, snapshot)) {
+                        if (StorageDiagnostics.verbose()) {
+                            Log.d(TAG, "日志不属于当前快照，忽略");
+                        }
+                        return new Replay(snapshot, false, log.length);
+                    }
+                    value = new StringBuilder(snapshot);
+                } else if (op == OP_REPLACE) {
+                    int offset = in.readInt();
+                    int deleteCount = in.readInt();
+                    byte[] insert = new byte[in.readInt()];
+                    in.readFully(insert);
+                    value.replace(offset, offset + deleteCount, new String(insert, StandardCharsets.UTF_8));
+                    applied++;
+                }
+            } catch (IOException | RuntimeException e) {
+                // 中间的记录损坏时后续记录的偏移都不可信，停止重放
+                Log.e(TAG, "日志记录损坏，停止重放，偏移: " + start, e);
+                intact = false;
+                break;
+            }
+            start = end + 1;
+        }
+        if (StorageDiagnostics.verbose()) {
+            Log.d(TAG, "重放日志记录数: " + applied);
+        }
+        return new Replay(value == null ? snapshot : value.toString(), intact && value != null, log.length);
+    }
+
+    /**
+     * 追加一条从oldValue到newValue的差异记录，empty为true时先写入基于snapshot的基准记录
+     * 差异为公共前后缀之间的一次区间替换，追加内容时只记录新增部分
+     */
+    static void append(Context context, String snapshot, String oldValue, String newValue, boolean empty)
+            throws IOException {
+        int prefix = 0;
+        int maxPrefix = Math.min(oldValue.length(), newValue.length());
+        while (prefix < maxPrefix && oldValue.charAt(prefix) == newValue.charAt(prefix)) {
+            prefix++;
+        }
+        // 区间边界不能落在代理对中间，否则插入内容里的半个代理对会被编码成'?'
+        if (prefix > 0 && Character.isHighSurrogate(oldValue.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        int maxSuffix = maxPrefix - prefix;
+        while (suffix < maxSuffix && oldValue.charAt(oldValue.length() - 1 - suffix)
+                == newValue.charAt(newValue.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(oldValue.charAt(oldValue.length() - suffix))) {
+            suffix--;
+        }
+        String insert = newValue.substring(prefix, newValue.length() - suffix);
+
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        if (empty) {
+            ByteArrayOutputStream base = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(base);
+            out.writeByte(OP_BASE);
+            byte[] snapshotBytes = snapshot.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(snapshotBytes.length);
+            out.writeLong(crc32(snapshotBytes));
+            writeLine(records, base.toByteArray());
+        }
+        ByteArrayOutputStream replace = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(replace);
+        out.writeByte(OP_REPLACE);
+        out.writeInt(prefix);
+        out.writeInt(oldValue.length() - suffix - prefix);
+        byte[] insertBytes = insert.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(insertBytes.length);
+        out.write(insertBytes);
+        writeLine(records, replace.toByteArray());
+
+        try (OutputStream os = JOURNAL_FILE.openOutput(context, true)) {
+            records.writeTo(os);
+        }
+    }
+
+    private static boolean matchesSnapshot(DataInputStream in, String snapshot) throws IOException {
+        byte[] snapshotBytes = snapshot.getBytes(StandardCharsets.UTF_8);
+        return in.readInt() == snapshotBytes.length && in.readLong() == crc32(snapshotBytes);
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    static void clear(Context context) {
+        if (!JOURNAL_FILE.delete(context)) {
+            Log.e(TAG, "删除日志失败");
+        }
+    }
+
+    private static void writeLine(ByteArrayOutputStream out, byte[] record) throws IOException {
+        out.write(Base64.encode(record, Base64.NO_WRAP));
+        out.write('\n');
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Android/syskit目录下的一个数据文件，位置与ExternalStorageUtils一致，应用卸载后仍保留
+ * Android 10+通过MediaStoreBackend访问Download/Android/syskit/下的文件，
+ * Android 9及以下通过LegacyFileBackend直接访问根目录/Android/syskit/下的隐藏文件
+ */
+final class SyskitFile {
+    static final String HIDDEN_DIR = "Android/syskit";
+    static final String MEDIA_RELATIVE_PATH = Environment.DIRECTORY_DOWNLOADS + "/" + HIDDEN_DIR + "/";
+    private static final String MIME_TYPE = "text/plain";
+
+    private final String mediaName;
+    private final String legacyName;
+
+    /**
+     * @param mediaName  Android 10+的文件名，例如"syskv.txt"
+     * @param legacyName Android 9及以下的文件名，例如".syskv"
+     */
+    SyskitFile(String mediaName, String legacyName) {
+        this.mediaName = mediaName;
+        this.legacyName = legacyName;
+    }
+
+    /**
+     * 按系统版本选择的存储后端
+     */
+    StorageBackend backend(Context context) {
+        LegacyFileBackend file = new LegacyFileBackend(localFile());
+        if (useMediaStore()) {
+            return new MediaStoreBackend(context.getApplicationContext(), MEDIA_RELATIVE_PATH, mediaName,
+                    MIME_TYPE, file);
+        }
+        return file;
+    }
+
+    /**
+     * 打开文件输入流，文件不存在时返回null，调用方负责关闭
+     */
+    InputStream openInput(Context context) throws IOException {
+        return backend(context).openInput();
+    }
+
+    /**
+     * 打开文件输出流，文件不存在时创建，append为false时截断原有内容
+     */
+    OutputStream openOutput(Context context, boolean append) throws IOException {
+        return backend(context).openOutput(append);
+    }
+
+    /**
+     * 以暂存方式整体替换文件内容，读取方只会看到旧内容或完整的新内容
+     * 旧行无法删除时（例如属于卸载前的应用）抛出异常，原文件保持不变
+     */
+    void replace(Context context, PayloadWriter writer) throws IOException {
+        StorageTransfer.replace(backend(context), writer);
+    }
+
+    /**
+     * 文件当前大小，不存在时返回0
+     */
+    long length(Context context) {
+        return backend(context).length();
+    }
+
+    boolean delete(Context context) {
+        return backend(context).delete();
+    }
+
+    /**
+     * 文件在文件系统中的实际位置
+     */
+    File localFile() {
+        if (useMediaStore()) {
+            File downloadDir = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
+            return new File(new File(downloadDir, HIDDEN_DIR), mediaName);
+        }
+        return new File(new File(Environment.getExternalStorageDirectory(), HIDDEN_DIR), legacyName);
+    }
+
+    private static boolean useMediaStore() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+    }
+}
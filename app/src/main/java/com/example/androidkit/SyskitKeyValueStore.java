@@ -0,0 +1,378 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 多键值持久化存储，与ExternalStorageUtils使用同一个不随卸载删除的目录
+ * 数据以追加日志保存，每次修改只在末尾追加一条记录，内存中维护全部键值的索引，
+ * 日志中失效记录过多时在存储线程池中压缩为当前快照
+ * 追加和压缩持有ExternalStorageUtils.lock的写锁，与其他进程和其他存储写入互斥；加载完成后读取只访问内存中的索引
+ * 首次访问会读取整个日志，读取失败时下次访问重试，期间get返回null、put和remove返回false
+ * 所有方法都可能执行I/O，不要在主线程调用
+ */
+public final class SyskitKeyValueStore {
+    private static final String TAG = "wzy-KeyValueStore";
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_REMOVE = 'D';
+    // 日志超过该大小且一半以上是失效记录时压缩
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+    // writeUTF写出的键最多65535字节
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    private static volatile SyskitKeyValueStore instance;
+
+    private final Context context;
+    private final SyskitFile logFile = new SyskitFile("syskv.txt", ".syskv");
+    private final Map<String, String> index = new HashMap<>();
+    // 每个有效键最新一条记录在日志中占用的字节数
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    // 以下字段由this保护，获取顺序总是先StorageLock后this
+    private boolean loaded = false;
+    private boolean compactionScheduled = false;
+    // 日志末尾有一条被中断的记录，下次追加前要先补一个换行，否则新记录会接在它后面一起损坏
+    private boolean tornTail = false;
+    private long logBytes = 0;
+    private long liveBytes = 0;
+
+    private SyskitKeyValueStore(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static SyskitKeyValueStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SyskitKeyValueStore.class) {
+                if (instance == null) {
+                    instance = new SyskitKeyValueStore(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public String get(String key) {
+        if (!ensureLoaded()) {
+            return null;
+        }
+        synchronized (this) {
+            return index.get(key);
+        }
+    }
+
+    public Set<String> keys() {
+        if (!ensureLoaded()) {
+            return Collections.emptySet();
+        }
+        synchronized (this) {
+            return new HashSet<>(index.keySet());
+        }
+    }
+
+    /**
+     * 写入一个键值，只追加一条记录，成功返回true
+     */
+    public boolean put(String key, String value) {
+        if (key == null || value == null) {
+            Log.e(TAG, "Cannot put null key or value");
+            return false;
+        }
+        if (!isValidKey(key) || !ensureLoaded()) {
+            return false;
+        }
+        StorageLock storageLock = ExternalStorageUtils.lock(context);
+        storageLock.lockWrite();
+        try {
+            synchronized (this) {
+                if (value.equals(index.get(key))) {
+                    return true;
+                }
+                byte[] record = encodeRecord(OP_PUT, key, value);
+                if (!append(record)) {
+                    return false;
+                }
+                index.put(key, value);
+                Integer oldSize = recordSizes.put(key, record.length);
+                liveBytes += record.length - (oldSize == null ? 0 : oldSize);
+                maybeScheduleCompaction();
+                return true;
+            }
+        } finally {
+            storageLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 删除一个键，只追加一条删除记录，成功返回true
+     */
+    public boolean remove(String key) {
+        if (key == null || !isValidKey(key) || !ensureLoaded()) {
+            return false;
+        }
+        StorageLock storageLock = ExternalStorageUtils.lock(context);
+        storageLock.lockWrite();
+        try {
+            synchronized (this) {
+                if (!index.containsKey(key)) {
+                    return true;
+                }
+                if (!append(encodeRecord(OP_REMOVE, key, null))) {
+                    return false;
+                }
+                index.remove(key);
+                Integer oldSize = recordSizes.remove(key);
+                liveBytes -= oldSize == null ? 0 : oldSize;
+                maybeScheduleCompaction();
+                return true;
+            }
+        } finally {
+            storageLock.unlockWrite();
+        }
+    }
+
+    /**
+     * 首次访问时读取日志，成功或已经加载过时返回true，失败时返回false，下次访问重试
+     */
+    private boolean ensureLoaded() {
+        synchronized (this) {
+            if (loaded) {
+                return true;
+            }
+        }
+        StorageLock storageLock = ExternalStorageUtils.lock(context);
+        storageLock.lockRead();
+        try {
+            synchronized (this) {
+                return loaded || load();
+            }
+        } finally {
+            storageLock.unlockRead();
+        }
+    }
+
+    /**
+     * 从头读取并重放日志，重建索引，失败时清空索引并标记为未加载，调用方持有StorageLock和this
+     */
+    private boolean load() {
+        index.clear();
+        recordSizes.clear();
+        logBytes = 0;
+        liveBytes = 0;
+        tornTail = false;
+        try {
+            InputStream is = logFile.openInput(context);
+            if (is == null) {
+                if (StorageDiagnostics.verbose()) {
+                    Log.d(TAG, "日志文件不存在，从空存储开始");
+                }
+            } else {
+                replay(StorageStreams.readAll(is, logFile.length(context)));
+                if (StorageDiagnostics.summary()) {
+                    Log.d(TAG, "日志加载完成，键数量: " + index.size() + "，日志大小: " + logBytes + " 字节");
+                }
+            }
+            loaded = true;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "读取日志失败，下次访问时重试", e);
+            index.clear();
+            recordSizes.clear();
+            logBytes = 0;
+            liveBytes = 0;
+            tornTail = false;
+            loaded = false;
+            return false;
+        }
+    }
+
+    /**
+     * 重放日志，每行是一条Base64编码的记录，末尾没有换行的记录是被中断的写入，直接忽略
+     */
+    private void replay(byte[] log) {
+        int start = 0;
+        while (start < log.length) {
+            int end = start;
+            while (end < log.length && log[end] != '\n') {
+                end++;
+            }
+            if (end == log.length) {
+                Log.e(TAG, "忽略末尾未写完的记录，偏移: " + start);
+                logBytes += end - start;
+                tornTail = true;
+                break;
+            }
+            int lineBytes = end - start + 1;
+            if (end > start) {
+                try {
+                    applyRecord(Base64.decode(log, start, end - start, Base64.NO_WRAP), lineBytes);
+                } catch (IllegalArgumentException | IOException e) {
+                    Log.e(TAG, "跳过损坏的记录，偏移: " + start, e);
+                }
+            }
+            logBytes += lineBytes;
+            start = end + 1;
+        }
+    }
+
+    private void applyRecord(byte[] record, int lineBytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte op = in.readByte();
+        String key = in.readUTF();
+        if (op == OP_PUT) {
+            byte[] value = new byte[in.readInt()];
+            in.readFully(value);
+            index.put(key, new String(value, StandardCharsets.UTF_8));
+            Integer oldSize = recordSizes.put(key, lineBytes);
+            liveBytes += lineBytes - (oldSize == null ? 0 : oldSize);
+        } else if (op == OP_REMOVE) {
+            index.remove(key);
+            Integer oldSize = recordSizes.remove(key);
+            liveBytes -= oldSize == null ? 0 : oldSize;
+        } else {
+            throw new IOException("未知的记录类型: " + op);
+        }
+    }
+
+    /**
+     * 编码一条记录：类型、键、值长度和值，Base64后以换行结尾
+     */
+    private static byte[] encodeRecord(byte op, String key, String value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            out.writeUTF(key);
+            if (value != null) {
+                byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(valueBytes.length);
+                out.write(valueBytes);
+            }
+            out.flush();
+            byte[] encoded = Base64.encode(bytes.toByteArray(), Base64.NO_WRAP);
+            byte[] line = new byte[encoded.length + 1];
+            System.arraycopy(encoded, 0, line, 0, encoded.length);
+            line[encoded.length] = '\n';
+            return line;
+        } catch (IOException e) {
+            // 写入内存流不会发生IO异常
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean append(byte[] record) {
+        try (OutputStream os = logFile.openOutput(context, true)) {
+            if (tornTail) {
+                // 先结束被中断的记录，重放时它会作为损坏的记录被跳过
+                os.write('\n');
+                logBytes++;
+                tornTail = false;
+            }
+            os.write(record);
+            logBytes += record.length;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "追加日志记录失败", e);
+            // 记录可能只写了一部分，多补一个换行只会留下一个空行
+            tornTail = true;
+            return false;
+        }
+    }
+
+    /**
+     * 键按writeUTF的修改版UTF-8编码后不能超过65535字节
+     */
+    private static boolean isValidKey(String key) {
+        long bytes = 0;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            bytes += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        if (bytes > MAX_KEY_BYTES) {
+            Log.e(TAG, "Key too long: " + bytes + " bytes, max " + MAX_KEY_BYTES);
+            return false;
+        }
+        return true;
+    }
+
+    private void maybeScheduleCompaction() {
+        if (compactionScheduled || logBytes < COMPACT_MIN_BYTES || logBytes < liveBytes * 2) {
+            return;
+        }
+        compactionScheduled = true;
+        try {
+            StorageExecutors.io().execute(this::compact);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "压缩任务被拒绝，下次写入时重试", e);
+            compactionScheduled = false;
+        }
+    }
+
+    /**
+     * 用当前全部有效键值重写日志
+     * 持有StorageLock的写锁，期间没有新的追加；只在复制索引时持有this，写入时读取不受影响
+     */
+    private void compact() {
+        StorageLock storageLock = ExternalStorageUtils.lock(context);
+        storageLock.lockWrite();
+        try {
+            long fileBytes = logFile.length(context);
+            final Map<String, String> snapshot;
+            long before;
+            synchronized (this) {
+                compactionScheduled = false;
+                // 其他进程追加过记录时内存中的索引不完整，先重新加载，否则压缩会丢掉这些记录
+                if (fileBytes != logBytes && !load()) {
+                    return;
+                }
+                snapshot = new HashMap<>(index);
+                before = logBytes;
+            }
+            final Map<String, Integer> sizes = new HashMap<>();
+            final long[] written = {0};
+            try {
+                // 暂存写入，压缩中途失败时原日志保持完整
+                logFile.replace(context, out -> {
+                    OutputStream os = new BufferedOutputStream(out);
+                    for (Map.Entry<String, String> entry : snapshot.entrySet()) {
+                        byte[] record = encodeRecord(OP_PUT, entry.getKey(), entry.getValue());
+                        os.write(record);
+                        sizes.put(entry.getKey(), record.length);
+                        written[0] += record.length;
+                    }
+                    os.flush();
+                });
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "压缩日志失败，保留原日志", e);
+                return;
+            }
+            synchronized (this) {
+                recordSizes.clear();
+                recordSizes.putAll(sizes);
+                logBytes = written[0];
+                liveBytes = written[0];
+                tornTail = false;
+            }
+            if (StorageDiagnostics.summary()) {
+                Log.d(TAG, "日志压缩完成，" + before + " 字节 -> " + written[0] + " 字节");
+            }
+        } finally {
+            storageLock.unlockWrite();
+        }
+    }
+}
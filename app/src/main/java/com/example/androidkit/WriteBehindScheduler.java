@@ -0,0 +1,177 @@
+package com.example.androidkit;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 延迟合并写入：保存只更新内存中的待写值，在防抖窗口内没有新的保存、
+ * 或距第一次未写入的保存超过最大延迟时，才在存储线程池中写入一次
+ * 期间被覆盖的保存直接丢弃，计入合并次数
+ * 进程在写入前被杀死时最多丢失最大延迟内的修改
+ */
+final class WriteBehindScheduler {
+    private static final String TAG = "wzy-WriteBehind";
+    // 写入失败后的重试间隔，每次失败翻倍，直到最大值
+    private static final long RETRY_BASE_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 60_000;
+
+    /**
+     * 实际执行写入的目标
+     */
+    interface Sink {
+        boolean write(Context context, String value);
+    }
+
+    private final Sink sink;
+    private final Object lock = new Object();
+    // 保证取出待写值和写入整体串行，先取出的值一定先写入
+    private final Object flushLock = new Object();
+    private final Runnable flushTask = this::flushOnIoThread;
+
+    private Context context;
+    private String pending;
+    // 已从pending取出、正在写入的值，写入返回前读取方仍然通过pending()看到它
+    private String inFlight;
+    private long firstPendingAt;
+    // 连续写入失败的次数，只在持有lock时访问
+    private int failedFlushes;
+
+    private volatile long debounceMillis = 500;
+    private volatile long maxLatencyMillis = 3000;
+
+    private final AtomicLong saveCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    WriteBehindScheduler(Sink sink) {
+        this.sink = sink;
+    }
+
+    void setDelays(long debounceMillis, long maxLatencyMillis) {
+        this.debounceMillis = Math.max(0, debounceMillis);
+        this.maxLatencyMillis = Math.max(0, maxLatencyMillis);
+    }
+
+    /**
+     * 记录新值并安排写入，立即返回
+     */
+    void save(Context context, String value) {
+        synchronized (lock) {
+            long now = SystemClock.uptimeMillis();
+            if (pending == null) {
+                firstPendingAt = now;
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+            pending = value;
+            this.context = context.getApplicationContext();
+            saveCount.incrementAndGet();
+            long delay = Math.min(debounceMillis, Math.max(0, firstPendingAt + maxLatencyMillis - now));
+            StorageExecutors.schedule(flushTask, delay);
+        }
+    }
+
+    /**
+     * 尚未写入完成的值，包括正在写入的值，没有时返回null
+     */
+    String pending() {
+        synchronized (lock) {
+            return pending != null ? pending : inFlight;
+        }
+    }
+
+    /**
+     * 立即安排一次写入，不阻塞调用线程
+     */
+    void flushSoon() {
+        synchronized (lock) {
+            if (pending != null) {
+                StorageExecutors.schedule(flushTask, 0);
+            }
+        }
+    }
+
+    /**
+     * 在当前线程写入待写值，没有待写值时直接返回true
+     * 写入完成前待写值仍然对pending()可见；写入失败时保留待写值并按退避间隔安排重试
+     */
+    boolean flush() {
+        synchronized (flushLock) {
+            String value;
+            Context target;
+            synchronized (lock) {
+                if (pending == null) {
+                    return true;
+                }
+                value = pending;
+                target = context;
+                inFlight = value;
+                pending = null;
+                StorageExecutors.cancel(flushTask);
+            }
+            boolean saved = false;
+            try {
+                saved = sink.write(target, value);
+            } finally {
+                flushCount.incrementAndGet();
+                synchronized (lock) {
+                    inFlight = null;
+                    if (saved) {
+                        failedFlushes = 0;
+                    } else if (pending == null) {
+                        // 写入期间有新的保存时由它安排的写入处理，这里只为恢复的旧值安排重试
+                        pending = value;
+                        firstPendingAt = SystemClock.uptimeMillis();
+                        long delay = Math.min(RETRY_MAX_MILLIS, RETRY_BASE_MILLIS << Math.min(failedFlushes, 6));
+                        failedFlushes++;
+                        StorageExecutors.schedule(flushTask, delay);
+                    }
+                }
+            }
+            if (!saved) {
+                Log.e(TAG, "延迟写入失败，保留待写内容，稍后重试");
+            }
+            return saved;
+        }
+    }
+
+    /**
+     * 调用方即将直接写入更新的内容，丢弃待写值，并等待正在进行的写入完成
+     */
+    void supersede() {
+        synchronized (flushLock) {
+            synchronized (lock) {
+                if (pending != null) {
+                    pending = null;
+                    coalescedCount.incrementAndGet();
+                    StorageExecutors.cancel(flushTask);
+                }
+            }
+        }
+    }
+
+    long getSaveCount() {
+        return saveCount.get();
+    }
+
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private void flushOnIoThread() {
+        try {
+            StorageExecutors.io().execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "写入任务被拒绝，稍后重试", e);
+            StorageExecutors.schedule(flushTask, debounceMillis);
+        }
+    }
+}
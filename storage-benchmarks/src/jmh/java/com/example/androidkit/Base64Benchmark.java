@@ -0,0 +1,71 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base64编码和解码：一次性编码为字符串（旧实现）与流式编码的对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Base64Benchmark {
+    @Param({"64", "1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    private String text;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = BenchmarkPayloads.text(size);
+        encoded = BenchmarkPayloads.stored(text, false, null);
+    }
+
+    /**
+     * 旧实现：UTF-8字节数组 -> Base64字符串 -> 再转为字节写出
+     */
+    @Benchmark
+    public byte[] encodeToString() {
+        String base64 = Base64.getMimeEncoder(76, new byte[]{'\n'})
+                .encodeToString(text.getBytes(StandardCharsets.UTF_8));
+        return base64.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 当前实现：边做UTF-8编码边做Base64编码直接写出
+     */
+    @Benchmark
+    public long encodeStreaming() throws IOException {
+        BenchmarkPayloads.CountingOutputStream out = new BenchmarkPayloads.CountingOutputStream();
+        BenchmarkPayloads.PIPELINE.writeBase64(out, null, StoragePipeline.stringWriter(text));
+        return out.count;
+    }
+
+    @Benchmark
+    public String decodeBulk() {
+        return new String(JdkBase64Engine.INSTANCE.decode(encoded, 0, encoded.length), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long decodeStreaming() throws IOException {
+        BenchmarkPayloads.CountingOutputStream out = new BenchmarkPayloads.CountingOutputStream();
+        try (InputStream in = JdkBase64Engine.INSTANCE.wrapInput(new ByteArrayInputStream(encoded))) {
+            StorageStreams.copy(in, out);
+        }
+        return out.count;
+    }
+}
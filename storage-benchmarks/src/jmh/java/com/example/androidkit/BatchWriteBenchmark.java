@@ -0,0 +1,78 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量保存的写出阶段：多个文件依次暂存写入与通过StorageBatch并行写入对比
+ * 线程数与Android端的探测线程池相同，MediaStore的查询和插入次数见baselines/README.md
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchWriteBenchmark {
+    private static final int THREADS = 3;
+
+    @Param({"3", "8"})
+    public int records;
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private String text;
+    private Path dir;
+    private ExecutorService executor;
+    private final List<StorageBatch.Write> writes = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchmarkPayloads.text(size);
+        dir = Files.createTempDirectory("syskit-batch-bench");
+        executor = Executors.newFixedThreadPool(THREADS);
+        for (int i = 0; i < records; i++) {
+            final NioFileBackend backend = new NioFileBackend(dir.resolve("record-" + i + ".txt"));
+            writes.add(() -> backend.replace(out -> BenchmarkPayloads.PIPELINE.writeStored(out, false, null,
+                    StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(text))));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        File[] leftovers = dir.toFile().listFiles();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    @Benchmark
+    public void sequential() throws IOException {
+        StorageBatch.writeAll(null, writes);
+    }
+
+    @Benchmark
+    public void parallel() throws IOException {
+        StorageBatch.writeAll(executor, writes);
+    }
+}
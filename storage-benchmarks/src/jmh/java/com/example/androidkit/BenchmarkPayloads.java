@@ -0,0 +1,102 @@
+package com.example.androidkit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 基准测试使用的数据，固定随机种子，每次运行内容相同
+ */
+final class BenchmarkPayloads {
+    // 基准测试统一使用的Base64实现，与Android端输出格式一致
+    static final StoragePipeline PIPELINE = new StoragePipeline(JdkBase64Engine.INSTANCE);
+
+    private static final String[] WORDS = {
+            "syskit", "device", "token", "session", "channel", "install", "uuid", "config",
+            "timestamp", "enabled", "version", "android", "storage", "payload", "value", "key"
+    };
+
+    private BenchmarkPayloads() {
+    }
+
+    /**
+     * 生成指定字节数的ASCII文本，由单词、数字和换行组成，压缩率接近实际保存的配置数据
+     */
+    static String text(int bytes) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(bytes + 16);
+        while (sb.length() < bytes) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+            int r = random.nextInt(10);
+            if (r == 0) {
+                sb.append("\r\n");
+            } else if (r < 4) {
+                sb.append('=').append(random.nextInt(1_000_000)).append(';');
+            } else {
+                sb.append(' ');
+            }
+        }
+        sb.setLength(bytes);
+        return sb.toString();
+    }
+
+    static byte[] bytes(int bytes) {
+        return text(bytes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成指定字节数的JSON数组，字段名重复、值各不相同，与序列化后保存的对象列表类似
+     */
+    static byte[] json(int bytes) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(bytes + 128);
+        sb.append('[');
+        for (int i = 0; sb.length() < bytes; i++) {
+            sb.append("{\"id\":").append(i)
+                    .append(",\"name\":\"").append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(10_000))
+                    .append("\",\"enabled\":").append(random.nextBoolean())
+                    .append(",\"timestamp\":").append(1_600_000_000_000L + random.nextInt(Integer.MAX_VALUE))
+                    .append("},");
+        }
+        sb.setLength(bytes - 1);
+        sb.append(']');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 生成指定字节数的随机字节，几乎不可压缩，对应已加密或已压缩的内容
+     */
+    static byte[] random(int bytes) {
+        byte[] data = new byte[bytes];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * 按存储格式编码后的完整文件内容
+     */
+    static byte[] stored(String value, boolean binary, PayloadCodec codec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(value.length() * 2 + 64);
+        PIPELINE.writeStored(out, binary, codec, StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(value));
+        return out.toByteArray();
+    }
+
+    /**
+     * 丢弃写入内容只统计字节数，避免基准测试包含内存复制
+     */
+    static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 大内容的单文件保存和读取与分块存储对比，单位为毫秒
+ * rewriteOneChunk只修改一个块的内容，对应频繁小改动的保存；线程数与Android端的分块线程池相同
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChunkedStoreBenchmark {
+    private static final int THREADS = 4;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    @Param({"1048576", "4194304", "16777216", "67108864"})
+    public int size;
+
+    private byte[] stored;
+    private byte[] modified;
+    private boolean toggle;
+    private Path dir;
+    private ExecutorService executor;
+    private NioFileBackend single;
+    private ChunkedStore sequentialStore;
+    private ChunkedStore parallelStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        stored = BenchmarkPayloads.stored(BenchmarkPayloads.text(size), false, null);
+        modified = stored.clone();
+        // 只改变中间一个块
+        modified[modified.length / 2] ^= 1;
+        dir = Files.createTempDirectory("syskit-chunk-bench");
+        executor = Executors.newFixedThreadPool(THREADS);
+        single = new NioFileBackend(dir.resolve("sysdata.txt"));
+        single.replace(out -> out.write(stored));
+        ChunkedStore.Directory directory = new ChunkedStore.Directory() {
+            @Override
+            public StorageBackend manifest() {
+                return new NioFileBackend(dir.resolve("sysdata-manifest.txt"));
+            }
+
+            @Override
+            public StorageBackend chunk(String hash) {
+                return new NioFileBackend(dir.resolve("sysdata-" + hash + ".txt"));
+            }
+        };
+        sequentialStore = new ChunkedStore(directory, CHUNK_SIZE, null);
+        parallelStore = new ChunkedStore(directory, CHUNK_SIZE, executor);
+        parallelStore.write(stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        File[] leftovers = dir.toFile().listFiles();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    @Benchmark
+    public void writeSingleFile() throws IOException {
+        single.replace(out -> out.write(stored));
+    }
+
+    /**
+     * 每次写出全部块：先删除清单，保存时没有可沿用的块
+     */
+    @Benchmark
+    public int writeAllChunksSequential() throws IOException {
+        sequentialStore.delete();
+        return sequentialStore.write(stored);
+    }
+
+    @Benchmark
+    public int writeAllChunksParallel() throws IOException {
+        parallelStore.delete();
+        return parallelStore.write(stored);
+    }
+
+    /**
+     * 两个只差一个块的内容交替保存，每次只写出一个块和清单
+     */
+    @Benchmark
+    public int rewriteOneChunk() throws IOException {
+        toggle = !toggle;
+        return parallelStore.write(toggle ? modified : stored);
+    }
+
+    @Benchmark
+    public byte[] readSingleFile() throws IOException {
+        return StorageStreams.readAll(single.openInput(), single.length());
+    }
+
+    @Benchmark
+    public byte[] readChunksSequential() throws IOException {
+        return sequentialStore.read();
+    }
+
+    @Benchmark
+    public byte[] readChunksParallel() throws IOException {
+        return parallelStore.read();
+    }
+}
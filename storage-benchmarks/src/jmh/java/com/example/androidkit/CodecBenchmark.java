@@ -0,0 +1,100 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 编码器的压缩速度和解压速度，编码后的大小作为辅助计数storedBytes与耗时一起输出，用于比较压缩率
+ * format为base64时是默认的保存方式（编码后再Base64），binary时写出二进制帧
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CodecBenchmark {
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    @Param({"text", "json", "random"})
+    public String payload;
+
+    @Param({"none", "deflate-1", "deflate-6", "deflate-9"})
+    public String codecName;
+
+    @Param({"base64", "binary"})
+    public String format;
+
+    private PayloadWriter writer;
+    private boolean binary;
+    private PayloadCodec codec;
+    private byte[] stored;
+
+    /**
+     * 编码后的字节数
+     * JMH把各轮测量迭代和各个fork的EVENTS计数相加，每轮只记录1/(迭代次数×fork数)，汇总后正好是编码后的字节数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StoredSize {
+        public double storedBytes;
+        private double share;
+
+        @Setup(Level.Iteration)
+        public void reset(BenchmarkParams benchmark, IterationParams iteration) {
+            storedBytes = 0;
+            share = 1.0 / (iteration.getCount() * Math.max(1, benchmark.getForks()));
+        }
+
+        void record(long bytes) {
+            storedBytes = bytes * share;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] data;
+        if ("json".equals(payload)) {
+            data = BenchmarkPayloads.json(size);
+        } else if ("random".equals(payload)) {
+            data = BenchmarkPayloads.random(size);
+        } else {
+            data = BenchmarkPayloads.bytes(size);
+        }
+        writer = StoragePipeline.bufferWriter(ByteBuffer.wrap(data));
+        binary = "binary".equals(format);
+        codec = "none".equals(codecName) ? null
+                : PayloadCodecs.deflate(Integer.parseInt(codecName.substring("deflate-".length())));
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 2 + 64);
+        BenchmarkPayloads.PIPELINE.writeStored(out, binary, codec, StorageFormat.UNKNOWN_LENGTH, writer);
+        stored = out.toByteArray();
+    }
+
+    @Benchmark
+    public long encode(StoredSize counters) throws IOException {
+        BenchmarkPayloads.CountingOutputStream out = new BenchmarkPayloads.CountingOutputStream();
+        BenchmarkPayloads.PIPELINE.writeStored(out, binary, codec, StorageFormat.UNKNOWN_LENGTH, writer);
+        counters.record(out.count);
+        return out.count;
+    }
+
+    @Benchmark
+    public byte[] decode(StoredSize counters) throws IOException {
+        counters.record(stored.length);
+        return BenchmarkPayloads.PIPELINE.readBytes(new ByteArrayInputStream(stored), stored.length);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从本地文件读取：输入流读取与FileChannel内存映射读取对比
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MappedReadBenchmark {
+    @Param({"65536", "1048576", "4194304", "16777216"})
+    public int size;
+
+    @Param({"base64", "binary"})
+    public String format;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("syskit-mapped", ".txt");
+        byte[] stored = BenchmarkPayloads.stored(BenchmarkPayloads.text(size), "binary".equals(format), null);
+        Files.write(file.toPath(), stored);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public String streamRead() throws IOException {
+        return BenchmarkPayloads.PIPELINE.readString(new FileInputStream(file), file.length());
+    }
+
+    @Benchmark
+    public String mappedRead() throws IOException {
+        try (FileInputStream fis = new FileInputStream(file);
+             FileChannel channel = fis.getChannel()) {
+            return BenchmarkPayloads.PIPELINE.readMappedString(channel);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 读取路径：旧实现的逐行读取拼接与当前的批量读取、流式读取对比
+ * 数据来自内存，只衡量解码和拼接本身的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReadPathBenchmark {
+    @Param({"64", "1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        encoded = BenchmarkPayloads.stored(BenchmarkPayloads.text(size), false, null);
+    }
+
+    /**
+     * 旧实现：BufferedReader逐行读取，用StringBuilder拼接后整体Base64解码
+     */
+    @Benchmark
+    public String readLineReconstruction() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(encoded), StandardCharsets.UTF_8))) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append("\n");
+            }
+            if (sb.length() > 0) {
+                sb.setLength(sb.length() - 1);
+            }
+            return new String(Base64.getMimeDecoder().decode(sb.toString()), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 当前实现：按大小一次读入字节数组后直接解码
+     */
+    @Benchmark
+    public String bulkRead() throws IOException {
+        return BenchmarkPayloads.PIPELINE.readString(new ByteArrayInputStream(encoded), encoded.length);
+    }
+
+    /**
+     * 当前实现：大小未知或超过批量读取上限时边读边解码
+     */
+    @Benchmark
+    public String streamingRead() throws IOException {
+        return BenchmarkPayloads.PIPELINE.readString(new ByteArrayInputStream(encoded), 0);
+    }
+}
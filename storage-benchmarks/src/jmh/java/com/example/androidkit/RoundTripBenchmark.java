@@ -0,0 +1,85 @@
+package com.example.androidkit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 完整的保存和读取，使用本地文件后端，覆盖各种存储格式
+ * format取值：base64（旧格式）、base64-deflate、binary、binary-deflate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RoundTripBenchmark {
+    @Param({"64", "1024", "65536", "1048576", "16777216"})
+    public int size;
+
+    @Param({"base64", "base64-deflate", "binary", "binary-deflate"})
+    public String format;
+
+    @Param({"legacy", "nio"})
+    public String backendType;
+
+    private String text;
+    private boolean binary;
+    private PayloadCodec codec;
+    private Path dir;
+    private StorageBackend backend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        text = BenchmarkPayloads.text(size);
+        binary = format.startsWith("binary");
+        codec = format.endsWith("deflate") ? PayloadCodecs.deflate(6) : null;
+        dir = Files.createTempDirectory("syskit-bench");
+        Path file = dir.resolve("sysdata.txt");
+        backend = "nio".equals(backendType) ? new NioFileBackend(file) : new LegacyFileBackend(file.toFile());
+        save();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        backend.delete();
+        File[] leftovers = dir.toFile().listFiles();
+        if (leftovers != null) {
+            for (File f : leftovers) {
+                f.delete();
+            }
+        }
+        dir.toFile().delete();
+    }
+
+    /**
+     * 暂存写入：写临时文件、fsync、rename
+     */
+    @Benchmark
+    public void save() throws IOException {
+        StorageTransfer.replace(backend, out -> BenchmarkPayloads.PIPELINE.writeStored(out, binary, codec,
+                StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(text)));
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return StorageTransfer.readString(backend, BenchmarkPayloads.PIPELINE);
+    }
+
+    @Benchmark
+    public String saveAndRead() throws IOException {
+        save();
+        return read();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.androidkit;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 存储文本格式使用的Base64实现，Android端使用android.util.Base64，JVM上使用java.util.Base64
+ * 编码输出每76个字符换行，解码时忽略换行
+ */
+public interface Base64Engine {
+    /**
+     * 包装输出流，关闭返回的流时写出末尾的填充并关闭out
+     */
+    OutputStream wrapOutput(OutputStream out);
+
+    /**
+     * 包装输入流，关闭返回的流时关闭in
+     */
+    InputStream wrapInput(InputStream in);
+
+    /**
+     * 解码一段完整的Base64文本，格式错误时抛出IllegalArgumentException
+     */
+    byte[] decode(byte[] data, int offset, int length);
+}
@@ -0,0 +1,259 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 分块存储：内容按固定大小切分为多个块文件，另有一个记录各块SHA-256的清单文件
+ * 块文件以内容哈希命名，保存时只写出哈希变化的块，未变化的块沿用原文件；
+ * 全部块写完后才替换清单，读取方只会看到旧清单或完整的新清单，最后删除新清单不再引用的块
+ * 读取时校验每个块的哈希，块损坏时抛出异常而不是返回错误的内容
+ * 块的读取和写出都在传入的线程池中并行执行，线程池为null时在当前线程依次执行
+ */
+public final class ChunkedStore {
+    private static final String MAGIC = "syskit-chunks";
+    private static final int VERSION = 1;
+
+    /**
+     * 块文件和清单文件所在的目录，由调用方决定文件名和访问方式
+     */
+    public interface Directory {
+        StorageBackend manifest();
+
+        /**
+         * 哈希为hash的块文件，hash为64位小写十六进制
+         */
+        StorageBackend chunk(String hash);
+    }
+
+    private final Directory directory;
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    public ChunkedStore(Directory directory, int chunkSize, ExecutorService executor) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize: " + chunkSize);
+        }
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.executor = executor;
+    }
+
+    /**
+     * 清单中记录的内容，块的顺序即内容的顺序，除最后一块外每块都是chunkSize字节
+     */
+    static final class Manifest {
+        final long length;
+        final int chunkSize;
+        final String[] hashes;
+
+        Manifest(long length, int chunkSize, String[] hashes) {
+            this.length = length;
+            this.chunkSize = chunkSize;
+            this.hashes = hashes;
+        }
+
+        int chunkLength(int index) {
+            return (int) Math.min(chunkSize, length - (long) index * chunkSize);
+        }
+    }
+
+    /**
+     * 是否存在清单，存在时read才会返回内容
+     */
+    public boolean exists() {
+        return directory.manifest().length() > 0;
+    }
+
+    /**
+     * 并行读取全部块并按清单拼接，没有清单时返回null
+     * 清单格式错误、块缺失或哈希不一致时抛出IOException
+     */
+    public byte[] read() throws IOException {
+        final Manifest manifest = readManifest();
+        if (manifest == null) {
+            return null;
+        }
+        if (manifest.length > Integer.MAX_VALUE - 8) {
+            throw new IOException("分块内容过大: " + manifest.length);
+        }
+        final byte[] data = new byte[(int) manifest.length];
+        List<StorageBatch.Write> reads = new ArrayList<>(manifest.hashes.length);
+        for (int i = 0; i < manifest.hashes.length; i++) {
+            final String hash = manifest.hashes[i];
+            final int offset = i * manifest.chunkSize;
+            final int length = manifest.chunkLength(i);
+            reads.add(() -> readChunk(hash, data, offset, length));
+        }
+        StorageBatch.writeAll(executor, reads);
+        return data;
+    }
+
+    /**
+     * 分块保存data，只写出清单中没有的块，返回实际写出的块数
+     * 失败时原清单和它引用的块保持不变
+     */
+    public int write(final byte[] data) throws IOException {
+        Manifest previous;
+        try {
+            previous = readManifest();
+        } catch (IOException e) {
+            // 原清单损坏，全部块重新写出
+            previous = null;
+        }
+        final Set<String> existing = new HashSet<>();
+        if (previous != null) {
+            existing.addAll(Arrays.asList(previous.hashes));
+        }
+
+        int count = (int) ((data.length + (long) chunkSize - 1) / chunkSize);
+        final String[] hashes = new String[count];
+        final boolean[] written = new boolean[count];
+        // 内容相同的块共用一个文件，只由一个任务写出
+        final Set<String> claimed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<StorageBatch.Write> writes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final int offset = i * chunkSize;
+            final int length = Math.min(chunkSize, data.length - offset);
+            writes.add(() -> {
+                String hash = hash(data, offset, length);
+                hashes[index] = hash;
+                if (!claimed.add(hash)) {
+                    return;
+                }
+                StorageBackend chunk = directory.chunk(hash);
+                // 清单引用的块内容由文件名保证，大小一致就不用重写
+                if (existing.contains(hash) && chunk.length() == length) {
+                    return;
+                }
+                chunk.replace(out -> out.write(data, offset, length));
+                written[index] = true;
+            });
+        }
+        StorageBatch.writeAll(executor, writes);
+
+        final byte[] manifest = formatManifest(new Manifest(data.length, chunkSize, hashes));
+        directory.manifest().replace(out -> out.write(manifest));
+
+        if (previous != null) {
+            existing.removeAll(Arrays.asList(hashes));
+            for (String hash : existing) {
+                // 删除失败只会留下无用的块，不影响读取
+                directory.chunk(hash).delete();
+            }
+        }
+        int changed = 0;
+        for (boolean w : written) {
+            if (w) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 删除清单和它引用的全部块，清单不存在时也返回true
+     */
+    public boolean delete() {
+        Manifest manifest;
+        try {
+            manifest = readManifest();
+        } catch (IOException e) {
+            manifest = null;
+        }
+        // 先删除清单，中途失败时不会留下引用缺失块的清单
+        if (!directory.manifest().delete()) {
+            return false;
+        }
+        boolean deleted = true;
+        if (manifest != null) {
+            for (String hash : new HashSet<>(Arrays.asList(manifest.hashes))) {
+                deleted &= directory.chunk(hash).delete();
+            }
+        }
+        return deleted;
+    }
+
+    Manifest readManifest() throws IOException {
+        InputStream in = directory.manifest().openInput();
+        if (in == null) {
+            return null;
+        }
+        String text = new String(StorageStreams.readAll(in, StorageStreams.BUFFER_SIZE), StandardCharsets.UTF_8);
+        String[] lines = text.split("\n");
+        try {
+            String[] header = lines[0].split(" ");
+            if (header.length != 4 || !MAGIC.equals(header[0]) || Integer.parseInt(header[1]) != VERSION) {
+                throw new IOException("无法识别的清单: " + lines[0]);
+            }
+            long length = Long.parseLong(header[2]);
+            int size = Integer.parseInt(header[3]);
+            if (length < 0 || size <= 0 || lines.length != (length + size - 1) / size + 1) {
+                throw new IOException("清单块数不一致: " + lines[0]);
+            }
+            return new Manifest(length, size, Arrays.copyOfRange(lines, 1, lines.length));
+        } catch (NumberFormatException e) {
+            throw new IOException("清单格式错误", e);
+        }
+    }
+
+    private static byte[] formatManifest(Manifest manifest) {
+        StringBuilder sb = new StringBuilder(32 + manifest.hashes.length * 65);
+        sb.append(MAGIC).append(' ').append(VERSION).append(' ')
+                .append(manifest.length).append(' ').append(manifest.chunkSize);
+        for (String hash : manifest.hashes) {
+            sb.append('\n').append(hash);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void readChunk(String hash, byte[] data, int offset, int length) throws IOException {
+        InputStream in = directory.chunk(hash).openInput();
+        if (in == null) {
+            throw new IOException("块不存在: " + hash);
+        }
+        try (InputStream chunk = in) {
+            int read = 0;
+            while (read < length) {
+                int n = chunk.read(data, offset + read, length - read);
+                if (n == -1) {
+                    throw new IOException("块长度不足: " + hash);
+                }
+                read += n;
+            }
+        }
+        if (!hash.equals(hash(data, offset, length))) {
+            throw new IOException("块校验失败: " + hash);
+        }
+    }
+
+    static String hash(byte[] data, int offset, int length) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Java和Android都保证支持SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(data, offset, length);
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
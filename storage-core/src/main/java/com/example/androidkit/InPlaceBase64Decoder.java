@@ -0,0 +1,75 @@
+package com.example.androidkit;
+
+import java.util.Arrays;
+
+/**
+ * 在原数组中就地解码Base64，解码结果写回输入所在的位置，不分配新数组
+ * 每4个字符解码为3个字节，写入位置总在读取位置之前，不会覆盖尚未读取的字符
+ * 接受Base64.DEFAULT的输出：跳过换行和空白，末尾的填充可有可无，其他字符视为格式错误
+ */
+final class InPlaceBase64Decoder {
+    private static final int SKIP = -1;
+    private static final int EQUALS = -2;
+    private static final int INVALID = -3;
+    private static final int[] DECODE = new int[256];
+
+    static {
+        Arrays.fill(DECODE, INVALID);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE[alphabet.charAt(i)] = i;
+        }
+        DECODE['\n'] = SKIP;
+        DECODE['\r'] = SKIP;
+        DECODE[' '] = SKIP;
+        DECODE['\t'] = SKIP;
+        DECODE['='] = EQUALS;
+    }
+
+    private InPlaceBase64Decoder() {
+    }
+
+    /**
+     * 解码data中从offset开始的length个字符，结果写在data的offset处，返回解码后的字节数
+     * 格式错误时抛出IllegalArgumentException，此时data中的内容已被部分覆盖
+     */
+    static int decode(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int write = offset;
+        int bits = 0;
+        int pending = 0;
+        boolean padded = false;
+        for (int read = offset; read < end; read++) {
+            int value = DECODE[data[read] & 0xFF];
+            if (value >= 0) {
+                if (padded) {
+                    throw new IllegalArgumentException("bad base-64: data after padding");
+                }
+                bits = bits << 6 | value;
+                if (++pending == 4) {
+                    data[write++] = (byte) (bits >> 16);
+                    data[write++] = (byte) (bits >> 8);
+                    data[write++] = (byte) bits;
+                    bits = 0;
+                    pending = 0;
+                }
+            } else if (value == EQUALS) {
+                if (pending < 2) {
+                    throw new IllegalArgumentException("bad base-64: misplaced padding");
+                }
+                padded = true;
+            } else if (value != SKIP) {
+                throw new IllegalArgumentException("bad base-64: illegal character " + (data[read] & 0xFF));
+            }
+        }
+        if (pending == 1) {
+            throw new IllegalArgumentException("bad base-64: truncated");
+        } else if (pending == 2) {
+            data[write++] = (byte) (bits >> 4);
+        } else if (pending == 3) {
+            data[write++] = (byte) (bits >> 10);
+            data[write++] = (byte) (bits >> 2);
+        }
+        return write - offset;
+    }
+}
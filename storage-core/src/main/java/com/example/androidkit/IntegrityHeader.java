@@ -0,0 +1,219 @@
+package com.example.androidkit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 完整性头：写在存储内容最前面，依次为0xFE 'S' 'K' 'C'、头格式版本、内容版本号、内容长度和内容的CRC32C
+ * 之后的内容仍是Base64文本或二进制帧，与两者都能按开头4个字节区分，没有完整性头的旧文件照常读取
+ * 读取时先按长度判断文件是否被截断，流式读取时边读边计算校验和，读到末尾不一致时抛出异常，
+ * 不会把损坏的内容当作正常内容返回；只读取完整性头就能比较不同位置内容的新旧
+ */
+public final class IntegrityHeader {
+    public static final int SIZE = 25;
+    private static final byte MAGIC_0 = (byte) 0xFE;
+    private static final byte MAGIC_1 = 'S';
+    private static final byte MAGIC_2 = 'K';
+    private static final byte MAGIC_3 = 'C';
+    private static final int HEADER_VERSION = 1;
+
+    // 内容版本号，每次保存递增，用于比较不同位置内容的新旧
+    public final long version;
+    // 完整性头之后的内容字节数
+    public final long length;
+    public final int crc;
+
+    IntegrityHeader(long version, long length, int crc) {
+        this.version = version;
+        this.length = length;
+        this.crc = crc;
+    }
+
+    /**
+     * 存储内容的前几个字节是否为完整性头
+     */
+    public static boolean isHeader(byte[] head, int length) {
+        return length >= 4 && head[0] == MAGIC_0 && head[1] == MAGIC_1 && head[2] == MAGIC_2 && head[3] == MAGIC_3;
+    }
+
+    /**
+     * 先把body写入内存计算长度和校验和，再依次写出完整性头和内容，会关闭raw
+     */
+    public static void write(OutputStream raw, long version, PayloadWriter body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        Crc32c crc = new Crc32c();
+        crc.update(buffer.array(), 0, buffer.size());
+        ByteBuffer header = ByteBuffer.allocate(SIZE);
+        header.put(MAGIC_0).put(MAGIC_1).put(MAGIC_2).put(MAGIC_3).put((byte) HEADER_VERSION);
+        header.putLong(version).putLong(buffer.size()).putInt((int) crc.getValue());
+        try (OutputStream out = raw) {
+            out.write(header.array());
+            buffer.writeTo(out);
+        }
+    }
+
+    /**
+     * 解析data开头的完整性头，不是完整性头时返回null
+     */
+    public static IntegrityHeader parse(byte[] data, int length) throws IOException {
+        if (!isHeader(data, length)) {
+            return null;
+        }
+        if (length < SIZE) {
+            throw new EOFException("Truncated integrity header");
+        }
+        int headerVersion = data[4] & 0xFF;
+        if (headerVersion > HEADER_VERSION) {
+            throw new IOException("Unsupported integrity header version: " + headerVersion);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data, 5, SIZE - 5);
+        long version = buffer.getLong();
+        long bodyLength = buffer.getLong();
+        if (bodyLength < 0) {
+            throw new IOException("Bad integrity header length: " + bodyLength);
+        }
+        return new IntegrityHeader(version, bodyLength, buffer.getInt());
+    }
+
+    /**
+     * 只读取开头的完整性头，没有完整性头或内容为空时返回null，不会关闭in
+     */
+    public static IntegrityHeader read(InputStream in) throws IOException {
+        byte[] head = new byte[SIZE];
+        return parse(head, StorageStreams.readFully(in, head));
+    }
+
+    /**
+     * 识别完整性头，返回之后的内容流，有完整性头时读取过程中校验长度和CRC32C，没有时按旧格式原样返回
+     * storedSize为包含完整性头的准确文件大小，已知时不读取内容就能发现截断，未知时传负数
+     */
+    public static InputStream unwrap(InputStream raw, long storedSize) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(raw, SIZE);
+        byte[] head = new byte[SIZE];
+        int n = StorageStreams.readFully(in, head);
+        IntegrityHeader header = parse(head, n);
+        if (header == null) {
+            in.unread(head, 0, n);
+            return in;
+        }
+        if (storedSize >= 0) {
+            header.checkLength(storedSize - SIZE);
+        }
+        return header.new CheckedInput(in);
+    }
+
+    /**
+     * in是否为unwrap返回的校验流
+     */
+    public static boolean isChecked(InputStream in) {
+        return in instanceof CheckedInput;
+    }
+
+    /**
+     * 校验data中offset之后的全部内容，长度不符时不计算校验和直接抛出异常
+     */
+    public void verify(byte[] data, int offset) throws IOException {
+        checkLength(data.length - offset);
+        Crc32c checksum = new Crc32c();
+        checksum.update(data, offset, data.length - offset);
+        checkCrc(checksum);
+    }
+
+    private void checkLength(long actual) throws IOException {
+        if (actual < length) {
+            throw new EOFException("Truncated content, expected " + length + " bytes, got " + actual);
+        }
+        if (actual > length) {
+            throw new IOException("Content length mismatch, expected " + length + " bytes, got " + actual);
+        }
+    }
+
+    private void checkCrc(Crc32c checksum) throws IOException {
+        if ((int) checksum.getValue() != crc) {
+            throw new IOException("CRC32C mismatch, content is corrupted");
+        }
+    }
+
+    /**
+     * 只返回length个字节，读完最后一个字节时校验CRC32C，提前到达流末尾时抛出异常
+     */
+    private final class CheckedInput extends FilterInputStream {
+        private final Crc32c checksum = new Crc32c();
+        private long remaining = length;
+
+        CheckedInput(InputStream in) throws IOException {
+            super(in);
+            if (remaining == 0) {
+                checkCrc(checksum);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new EOFException("Truncated content, " + remaining + " bytes missing");
+            }
+            checksum.update(b, off, n);
+            remaining -= n;
+            if (remaining == 0) {
+                checkCrc(checksum);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的内容也要参与校验
+            byte[] buffer = new byte[(int) Math.min(StorageStreams.BUFFER_SIZE, Math.max(n, 1))];
+            long skipped = 0;
+            while (skipped < n) {
+                int r = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (r == -1) {
+                    break;
+                }
+                skipped += r;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * 可以直接访问内部数组的ByteArrayOutputStream，计算校验和时不用复制
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(StorageStreams.BUFFER_SIZE);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
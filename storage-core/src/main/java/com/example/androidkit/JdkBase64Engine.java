@@ -0,0 +1,69 @@
+package com.example.androidkit;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 基于java.util.Base64的实现，输出与android.util.Base64.DEFAULT一致：每76个字符换行，末尾有换行
+ * java.util.Base64在Android 8.0才加入，Android端不要使用该类
+ */
+public final class JdkBase64Engine implements Base64Engine {
+    public static final JdkBase64Engine INSTANCE = new JdkBase64Engine();
+
+    private static final int LINE_LENGTH = 76;
+    private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.US_ASCII);
+
+    private JdkBase64Engine() {
+    }
+
+    @Override
+    public OutputStream wrapOutput(final OutputStream target) {
+        // 匿名类中的out是FilterOutputStream的字段，即encoder
+        final OutputStream encoder = Base64.getMimeEncoder(LINE_LENGTH, LINE_SEPARATOR)
+                .wrap(StorageStreams.nonClosing(target));
+        return new FilterOutputStream(encoder) {
+            private boolean written = false;
+
+            @Override
+            public void write(int b) throws IOException {
+                written = true;
+                encoder.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written |= len > 0;
+                encoder.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    encoder.close();
+                    // MIME编码器最后一行后没有换行，补上与Android一致
+                    if (written) {
+                        target.write(LINE_SEPARATOR);
+                    }
+                } finally {
+                    target.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public InputStream wrapInput(InputStream in) {
+        return Base64.getMimeDecoder().wrap(in);
+    }
+
+    @Override
+    public byte[] decode(byte[] data, int offset, int length) {
+        byte[] source = offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset, offset + length);
+        return Base64.getMimeDecoder().decode(source);
+    }
+}
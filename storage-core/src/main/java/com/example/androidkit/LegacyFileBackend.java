@@ -0,0 +1,87 @@
+package com.example.androidkit;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 直接通过java.io.File访问文件，用于Android 9及以下的外部存储，所有Android版本都可用
+ */
+public final class LegacyFileBackend implements StorageBackend {
+    private final File file;
+
+    public LegacyFileBackend(File file) {
+        this.file = file;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    @Override
+    public InputStream openInput() throws IOException {
+        try {
+            return new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            if (!file.exists()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public OutputStream openOutput(boolean append) throws IOException {
+        ensureParentDir();
+        return new FileOutputStream(file, append);
+    }
+
+    /**
+     * 先写入同目录下的临时文件并fsync，再rename覆盖原文件
+     */
+    @Override
+    public void replace(PayloadWriter writer) throws IOException {
+        ensureParentDir();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            try (FileOutputStream fos = new FileOutputStream(temp)) {
+                // writer可能关闭传入的流，fsync之前不能关闭文件
+                writer.writeTo(StorageStreams.nonClosing(fos));
+                fos.getFD().sync();
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("替换文件失败: " + file.getAbsolutePath());
+            }
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public long length() {
+        return file.length();
+    }
+
+    @Override
+    public boolean delete() {
+        return !file.exists() || file.delete();
+    }
+
+    @Override
+    public String describe() {
+        return file.getAbsolutePath();
+    }
+
+    private void ensureParentDir() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("创建目录失败: " + dir.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 内容编码器，在Base64之前对原始内容做压缩等变换
+ * id写入文件头，读取时据此自动选择解码器，注册后不能再修改
+ */
+public interface PayloadCodec {
+    /**
+     * 写入文件头的编码器标识，0-127保留给内置编码器
+     */
+    int id();
+
+    /**
+     * 包装输出流，关闭返回的流时必须写出全部剩余数据并关闭out
+     */
+    OutputStream wrapOutput(OutputStream out) throws IOException;
+
+    /**
+     * 包装输入流，关闭返回的流时必须关闭in
+     */
+    InputStream wrapInput(InputStream in) throws IOException;
+}
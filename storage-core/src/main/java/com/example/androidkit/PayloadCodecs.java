@@ -0,0 +1,117 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 内置编码器和编码器注册表
+ */
+public final class PayloadCodecs {
+    public static final int ID_NONE = 0;
+    public static final int ID_DEFLATE = 1;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final PayloadCodec NONE = new PayloadCodec() {
+        @Override
+        public int id() {
+            return ID_NONE;
+        }
+
+        @Override
+        public OutputStream wrapOutput(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        public InputStream wrapInput(InputStream in) {
+            return in;
+        }
+    };
+
+    // 解码时只需要id，压缩级别不影响解压
+    private static final PayloadCodec[] REGISTRY = new PayloadCodec[256];
+
+    static {
+        REGISTRY[ID_NONE] = NONE;
+        REGISTRY[ID_DEFLATE] = deflate(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private PayloadCodecs() {
+    }
+
+    /**
+     * 不做任何变换，只写入文件头
+     */
+    public static PayloadCodec none() {
+        return NONE;
+    }
+
+    /**
+     * Deflate压缩，level取1-9，越大压缩率越高、速度越慢
+     */
+    public static PayloadCodec deflate(final int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < 1 || level > 9)) {
+            throw new IllegalArgumentException("Deflate level must be 1-9: " + level);
+        }
+        return new PayloadCodec() {
+            @Override
+            public int id() {
+                return ID_DEFLATE;
+            }
+
+            @Override
+            public OutputStream wrapOutput(OutputStream out) {
+                final Deflater deflater = new Deflater(level);
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            // 自定义Deflater不会在close时释放native内存
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public InputStream wrapInput(InputStream in) {
+                final Inflater inflater = new Inflater();
+                return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * 注册自定义编码器，id取128-255
+     */
+    public static synchronized void register(PayloadCodec codec) {
+        int id = codec.id();
+        if (id < 128 || id > 255) {
+            throw new IllegalArgumentException("Custom codec id must be 128-255: " + id);
+        }
+        if (REGISTRY[id] != null && REGISTRY[id] != codec) {
+            throw new IllegalStateException("Codec id already registered: " + id);
+        }
+        REGISTRY[id] = codec;
+    }
+
+    static synchronized PayloadCodec forId(int id) {
+        return id >= 0 && id < REGISTRY.length ? REGISTRY[id] : null;
+    }
+}
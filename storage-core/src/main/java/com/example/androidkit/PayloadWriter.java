@@ -0,0 +1,11 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 向输出流写出一次保存的全部内容，由调用方负责打开和关闭流
+ */
+public interface PayloadWriter {
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,42 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 一个存储文件的底层访问方式，只负责字节的读写，编码和格式由StoragePipeline处理
+ * 不依赖Android类的实现可以直接在JVM上运行，用于基准测试和单元测试
+ */
+public interface StorageBackend {
+    /**
+     * 打开文件输入流，文件不存在时返回null，调用方负责关闭
+     */
+    InputStream openInput() throws IOException;
+
+    /**
+     * 打开文件输出流，文件不存在时创建，append为false时截断原有内容，调用方负责关闭
+     */
+    OutputStream openOutput(boolean append) throws IOException;
+
+    /**
+     * 以暂存方式整体替换文件内容，读取方只会看到旧内容或完整的新内容
+     * 失败时抛出异常，原文件保持不变
+     */
+    void replace(PayloadWriter writer) throws IOException;
+
+    /**
+     * 文件当前大小，不存在时返回0
+     */
+    long length();
+
+    /**
+     * 删除文件，文件不存在时也返回true
+     */
+    boolean delete();
+
+    /**
+     * 文件位置的描述，只用于诊断日志，可能需要额外查询，只在StorageDiagnostics为VERBOSE时调用
+     */
+    String describe();
+}
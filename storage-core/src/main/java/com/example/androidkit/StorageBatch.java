@@ -0,0 +1,79 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * 批量保存的写出阶段：多个文件的内容互不依赖，可以并行写出
+ * 分块存储的各块读取同样互不依赖，也通过writeAll并行执行
+ */
+public final class StorageBatch {
+
+    /**
+     * 一个文件的写出操作
+     */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    private StorageBatch() {
+    }
+
+    /**
+     * 执行全部写出，executor为null时在当前线程依次执行
+     * 总是等待全部写出结束后才返回，有失败时抛出第一个失败的异常
+     */
+    public static void writeAll(ExecutorService executor, List<? extends Write> writes) throws IOException {
+        if (executor == null || writes.size() < 2) {
+            for (Write write : writes) {
+                write.run();
+            }
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(writes.size());
+        // 最后一个在当前线程执行，少占用一个线程
+        for (int i = 0; i < writes.size() - 1; i++) {
+            final Write write = writes.get(i);
+            futures.add(executor.submit(() -> {
+                write.run();
+                return null;
+            }));
+        }
+        IOException failure = null;
+        try {
+            writes.get(writes.size() - 1).run();
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException(e);
+        }
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // 写出仍在进行，必须等其结束，调用方才能安全地清理
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        Throwable cause = e.getCause();
+                        failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
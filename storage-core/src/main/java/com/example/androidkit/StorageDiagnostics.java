@@ -0,0 +1,79 @@
+package com.example.androidkit;
+
+/**
+ * 存储读写的诊断日志级别
+ * 日志内容只在对应级别开启时才拼接，仅用于调试的查询（获取文件实际路径、列出下载目录）只在VERBOSE下执行，
+ * OFF时热路径上不做任何诊断查询，也不生成任何日志字符串，错误日志不受影响
+ * 不依赖Android类，Android端按debug包或release包通过setDefaultLevel设置默认级别，通过setLogger输出到Logcat
+ */
+public final class StorageDiagnostics {
+
+    public enum Level {
+        // 只输出错误日志
+        OFF,
+        // 每次保存或读取输出一两行结果
+        SUMMARY,
+        // 输出全部过程日志，并执行仅用于调试的查询
+        VERBOSE
+    }
+
+    /**
+     * storage-core中诊断日志的输出方式
+     */
+    public interface Logger {
+        void log(String message);
+    }
+
+    // setLevel设置的级别，为null时使用defaultLevel
+    private static volatile Level level = null;
+    private static volatile Level defaultLevel = Level.OFF;
+    // 没有设置时丢弃日志
+    private static volatile Logger logger = null;
+
+    private StorageDiagnostics() {
+    }
+
+    public static void setLevel(Level newLevel) {
+        level = newLevel == null ? Level.OFF : newLevel;
+    }
+
+    /**
+     * 设置没有调用过setLevel时使用的级别，不会覆盖setLevel设置的级别
+     */
+    public static void setDefaultLevel(Level newLevel) {
+        defaultLevel = newLevel == null ? Level.OFF : newLevel;
+    }
+
+    public static void setLogger(Logger newLogger) {
+        logger = newLogger;
+    }
+
+    public static Level getLevel() {
+        Level current = level;
+        return current != null ? current : defaultLevel;
+    }
+
+    /**
+     * 是否输出保存和读取结果，拼接日志前先判断
+     */
+    static boolean summary() {
+        return getLevel() != Level.OFF;
+    }
+
+    /**
+     * 是否输出过程日志和执行调试查询
+     */
+    static boolean verbose() {
+        return getLevel() == Level.VERBOSE;
+    }
+
+    /**
+     * 输出storage-core中的诊断日志，调用前先用summary()或verbose()判断级别
+     */
+    static void log(String message) {
+        Logger current = logger;
+        if (current != null) {
+            current.log(message);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.androidkit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 存储内容的格式，有两种形式：
+ * 1. Base64文本：解码后可选带文件头0xFE 'S' 'K'、格式版本、编码器id，之后是编码器输出的内容；
+ *    旧版本文件没有文件头，解码后直接是UTF-8文本，而UTF-8文本不会以0xFE开头，因此可以自动区分；
+ *    不经过编码器的原始字节恰好以0xFE开头时补写一个不做变换的文件头，读取时不会被误认为文件头
+ * 2. 二进制帧：不经过Base64，帧头为0xFE 'S' 'K' 'B'、格式版本、标志位、编码器id、原始内容长度，
+ *    之后是编码器输出的内容；Base64文本只包含可见ASCII字符，读取时看第一个字节即可区分
+ * 两种形式之前都可以再加一个完整性头，见IntegrityHeader
+ */
+public final class StorageFormat {
+    public static final int HEADER_SIZE = 5;
+    public static final int FRAME_MAGIC_SIZE = 4;
+    public static final int FRAME_HEADER_SIZE = 15;
+    // 帧中的编码器id有效，否则内容未经编码
+    public static final int FLAG_CODEC = 1;
+    // 原始内容长度未知，写入时为流式数据
+    public static final long UNKNOWN_LENGTH = -1;
+    private static final byte MAGIC_0 = (byte) 0xFE;
+    private static final byte MAGIC_1 = 'S';
+    private static final byte MAGIC_2 = 'K';
+    private static final byte FRAME_MAGIC_3 = 'B';
+    private static final int FORMAT_VERSION = 1;
+    private static final int FRAME_VERSION = 1;
+
+    private StorageFormat() {
+    }
+
+    /**
+     * 写入文件头并返回编码器包装后的输出流，codec为null时不写文件头，保持旧格式，
+     * 只有内容以0xFE开头时才写入不做变换的文件头，关闭返回的流会关闭out
+     */
+    public static OutputStream wrapOutput(OutputStream out, PayloadCodec codec) throws IOException {
+        if (codec == null) {
+            return new HeaderOnDemandOutput(out);
+        }
+        writeHeader(out, codec);
+        return codec.wrapOutput(out);
+    }
+
+    private static void writeHeader(OutputStream out, PayloadCodec codec) throws IOException {
+        out.write(new byte[]{MAGIC_0, MAGIC_1, MAGIC_2, FORMAT_VERSION, (byte) codec.id()});
+    }
+
+    /**
+     * 看到第一个字节后再决定是否需要文件头，其余内容原样写出
+     */
+    private static final class HeaderOnDemandOutput extends FilterOutputStream {
+        private boolean started = false;
+
+        HeaderOnDemandOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!started && len > 0) {
+                started = true;
+                if (b[off] == MAGIC_0) {
+                    writeHeader(out, PayloadCodecs.none());
+                }
+            }
+            out.write(b, off, len);
+        }
+    }
+
+    /**
+     * 写入二进制帧头并返回编码器包装后的输出流，codec为null时内容原样写出
+     * length为原始内容字节数，未知时传UNKNOWN_LENGTH，关闭返回的流会关闭out
+     */
+    public static OutputStream wrapFrameOutput(OutputStream out, PayloadCodec codec, long length) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(FRAME_HEADER_SIZE);
+        DataOutputStream data = new DataOutputStream(header);
+        data.write(new byte[]{MAGIC_0, MAGIC_1, MAGIC_2, FRAME_MAGIC_3});
+        data.writeByte(FRAME_VERSION);
+        data.writeByte(codec == null ? 0 : FLAG_CODEC);
+        data.writeByte(codec == null ? 0 : codec.id());
+        data.writeLong(length);
+        header.writeTo(out);
+        return codec == null ? out : codec.wrapOutput(out);
+    }
+
+    /**
+     * 存储内容的前几个字节是否为二进制帧头
+     */
+    public static boolean isFrame(byte[] head, int length) {
+        return isFrame(head, 0, length);
+    }
+
+    /**
+     * data中从offset开始的length个字节是否以二进制帧头开头
+     */
+    public static boolean isFrame(byte[] data, int offset, int length) {
+        return length >= FRAME_MAGIC_SIZE && data[offset] == MAGIC_0 && data[offset + 1] == MAGIC_1
+                && data[offset + 2] == MAGIC_2 && data[offset + 3] == FRAME_MAGIC_3;
+    }
+
+    /**
+     * 识别文件头并返回解码后的原始内容流，没有文件头时按旧格式原样返回
+     */
+    public static InputStream openPayload(InputStream in) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(in, HEADER_SIZE);
+        byte[] header = new byte[HEADER_SIZE];
+        int n = StorageStreams.readFully(pushback, header);
+        PayloadCodec codec = n == HEADER_SIZE ? parseHeader(header, 0) : null;
+        if (codec == null) {
+            pushback.unread(header, 0, n);
+            return pushback;
+        }
+        return codec.wrapInput(pushback);
+    }
+
+    /**
+     * 读取二进制帧头并返回解码后的原始内容流，流式读取不校验内容长度
+     */
+    public static InputStream openFrame(InputStream in) throws IOException {
+        byte[] header = new byte[FRAME_HEADER_SIZE];
+        if (StorageStreams.readFully(in, header) < FRAME_HEADER_SIZE) {
+            throw new EOFException("Truncated frame header");
+        }
+        PayloadCodec codec = parseFrameHeader(header, 0, header.length);
+        return codec == null ? in : codec.wrapInput(in);
+    }
+
+    /**
+     * 把Base64解码后的完整内容还原为原始字节，没有文件头时直接返回data
+     */
+    public static byte[] decodePayload(byte[] data) throws IOException {
+        ByteBuffer payload = decodePayload(data, 0, data.length);
+        return payload.array() == data ? data : payload.array();
+    }
+
+    /**
+     * 同上，只处理data中从offset开始的length个字节
+     * 没有文件头时返回指向data中对应区间的ByteBuffer，不复制内容
+     */
+    public static ByteBuffer decodePayload(byte[] data, int offset, int length) throws IOException {
+        PayloadCodec codec = length >= HEADER_SIZE ? parseHeader(data, offset) : null;
+        if (codec == null) {
+            return ByteBuffer.wrap(data, offset, length);
+        }
+        return ByteBuffer.wrap(inflate(codec, data, offset + HEADER_SIZE, offset + length, length * 2));
+    }
+
+    /**
+     * 把完整的二进制帧还原为原始字节，帧头记录了长度时校验内容是否完整
+     */
+    public static byte[] decodeFrame(byte[] frame) throws IOException {
+        return decodeFrame(frame, 0);
+    }
+
+    /**
+     * 把data中从offset开始到末尾的完整二进制帧还原为原始字节
+     */
+    public static byte[] decodeFrame(byte[] data, int offset) throws IOException {
+        int frameLength = data.length - offset;
+        if (frameLength < FRAME_HEADER_SIZE) {
+            throw new EOFException("Truncated frame header");
+        }
+        PayloadCodec codec = parseFrameHeader(data, offset, frameLength);
+        long length = ByteBuffer.wrap(data, offset + 7, 8).getLong();
+        int body = offset + FRAME_HEADER_SIZE;
+        byte[] payload = codec == null
+                ? Arrays.copyOfRange(data, body, data.length)
+                : inflate(codec, data, body,
+                length > 0 && length < Integer.MAX_VALUE ? (int) length : frameLength * 2);
+        if (length != UNKNOWN_LENGTH && payload.length != length) {
+            throw new IOException("Frame length mismatch, expected " + length + ", got " + payload.length);
+        }
+        return payload;
+    }
+
+    private static byte[] inflate(PayloadCodec codec, byte[] data, int offset, int capacity) throws IOException {
+        return inflate(codec, data, offset, data.length, capacity);
+    }
+
+    private static byte[] inflate(PayloadCodec codec, byte[] data, int offset, int end, int capacity)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, capacity));
+        try (InputStream in = codec.wrapInput(new ByteArrayInputStream(data, offset, end - offset))) {
+            StorageStreams.copy(in, out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解析文件头，不是文件头时返回null，格式版本或编码器不支持时抛出异常
+     */
+    private static PayloadCodec parseHeader(byte[] data, int offset) throws IOException {
+        if (data[offset] != MAGIC_0 || data[offset + 1] != MAGIC_1 || data[offset + 2] != MAGIC_2) {
+            return null;
+        }
+        int version = data[offset + 3] & 0xFF;
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+        return codecForId(data[offset + 4] & 0xFF);
+    }
+
+    /**
+     * 解析帧头，返回内容使用的编码器，未经编码时返回null
+     */
+    private static PayloadCodec parseFrameHeader(byte[] data, int offset, int length) throws IOException {
+        if (!isFrame(data, offset, length)) {
+            throw new IOException("Not a storage frame");
+        }
+        int version = data[offset + 4] & 0xFF;
+        if (version > FRAME_VERSION) {
+            throw new IOException("Unsupported frame version: " + version);
+        }
+        int flags = data[offset + 5] & 0xFF;
+        if ((flags & ~FLAG_CODEC) != 0) {
+            throw new IOException("Unsupported frame flags: " + flags);
+        }
+        return (flags & FLAG_CODEC) != 0 ? codecForId(data[offset + 6] & 0xFF) : null;
+    }
+
+    private static PayloadCodec codecForId(int codecId) throws IOException {
+        PayloadCodec codec = PayloadCodecs.forId(codecId);
+        if (codec == null) {
+            throw new IOException("Unknown codec id: " + codecId);
+        }
+        return codec;
+    }
+}
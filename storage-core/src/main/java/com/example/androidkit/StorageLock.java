@@ -0,0 +1,121 @@
+package com.example.androidkit;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 存储读写锁：进程内读取互不阻塞、写入互斥，跨进程通过锁文件上的FileChannel.lock同步
+ * 进程内第一个读取者获取共享文件锁、最后一个释放，写入者持有独占文件锁
+ * 可重入，写入过程中可以再读取，但持有读锁时不能再获取写锁
+ * 锁文件无法打开或加锁失败时只记录异常，退化为进程内的读写锁
+ */
+public final class StorageLock {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final File lockFile;
+    private final Object fileMonitor = new Object();
+
+    // 以下字段由fileMonitor保护
+    private FileChannel channel;
+    private FileLock sharedLock;
+    private int readers = 0;
+
+    // 只由持有写锁的线程访问
+    private FileLock exclusiveLock;
+
+    private volatile Exception lastFailure;
+
+    /**
+     * lockFile为null时只使用进程内的读写锁
+     */
+    public StorageLock(File lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    public void lockRead() {
+        lock.readLock().lock();
+        if (lock.isWriteLockedByCurrentThread()) {
+            // 写入过程中的读取，已持有独占文件锁
+            return;
+        }
+        synchronized (fileMonitor) {
+            if (readers++ == 0) {
+                sharedLock = acquire(true);
+            }
+        }
+    }
+
+    public void unlockRead() {
+        try {
+            if (!lock.isWriteLockedByCurrentThread()) {
+                synchronized (fileMonitor) {
+                    if (--readers == 0) {
+                        release(sharedLock);
+                        sharedLock = null;
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void lockWrite() {
+        lock.writeLock().lock();
+        if (lock.getWriteHoldCount() == 1) {
+            synchronized (fileMonitor) {
+                exclusiveLock = acquire(false);
+            }
+        }
+    }
+
+    public void unlockWrite() {
+        try {
+            if (lock.getWriteHoldCount() == 1) {
+                synchronized (fileMonitor) {
+                    release(exclusiveLock);
+                    exclusiveLock = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private FileLock acquire(boolean shared) {
+        if (lockFile == null) {
+            return null;
+        }
+        try {
+            if (channel == null || !channel.isOpen()) {
+                // 通道一直保持打开，关闭通道会释放其上的全部文件锁
+                channel = new RandomAccessFile(lockFile, "rw").getChannel();
+            }
+            return channel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException | RuntimeException e) {
+            lastFailure = e;
+            return null;
+        }
+    }
+
+    /**
+     * 最近一次获取文件锁失败的原因，没有失败过时返回null，用于诊断
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+
+    private static void release(FileLock fileLock) {
+        if (fileLock == null) {
+            return;
+        }
+        try {
+            fileLock.release();
+        } catch (IOException e) {
+            // 通道已关闭时锁已随之释放
+        }
+    }
+}
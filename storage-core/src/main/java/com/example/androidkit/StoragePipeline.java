@@ -0,0 +1,315 @@
+package com.example.androidkit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 存储内容的读写管线：编码器、文件头和Base64/二进制帧的组合，不依赖Android类
+ * 读取时按文件大小一次分配字节数组并批量读取，直接从字节数组做Base64解码，
+ * 不经过字符集解码和逐行拼接，内容中的\r\n也能原样保留
+ * Base64文本和二进制帧两种格式按文件开头自动识别，存在完整性头时读取过程中校验长度和CRC32C
+ */
+public final class StoragePipeline {
+    // 超过该大小改为边读边解码，避免同时持有编码和解码两份完整数据
+    public static final long BULK_READ_LIMIT = 4L * 1024 * 1024;
+
+    private final Base64Engine base64;
+
+    public StoragePipeline(Base64Engine base64) {
+        this.base64 = base64;
+    }
+
+    /**
+     * 读取存储内容并解码为UTF-8字符串，会关闭raw
+     * storedSize来自MediaStore的SIZE列或文件长度，未知时传0
+     */
+    public String readString(InputStream raw, long storedSize) throws IOException {
+        if (storedSize <= 0 || storedSize > BULK_READ_LIMIT) {
+            return decodeStreaming(raw, storedSize).toUtf8String();
+        }
+        return decodeString(StorageStreams.readAll(raw, storedSize));
+    }
+
+    /**
+     * 解码已完整读入内存的存储内容，用于需要分别统计读取和解码耗时的场景
+     * Base64在stored中就地解码，除结果字符串外不再分配完整大小的数组，调用后stored的内容不再有效
+     */
+    public String decodeString(byte[] stored) throws IOException {
+        ByteBuffer payload = decodeBulk(stored);
+        return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取存储内容的原始字节，会关闭raw
+     */
+    public byte[] readBytes(InputStream raw, long storedSize) throws IOException {
+        if (storedSize <= 0 || storedSize > BULK_READ_LIMIT) {
+            return decodeStreaming(raw, storedSize).toByteArray();
+        }
+        ByteBuffer payload = decodeBulk(StorageStreams.readAll(raw, storedSize));
+        byte[] array = payload.array();
+        if (payload.arrayOffset() + payload.position() == 0 && payload.remaining() == array.length) {
+            return array;
+        }
+        return Arrays.copyOfRange(array, payload.arrayOffset() + payload.position(),
+                payload.arrayOffset() + payload.limit());
+    }
+
+    /**
+     * 通过内存映射读取整个文件并解码为UTF-8字符串，编码后的内容不会复制到Java堆
+     * 适合较大的文件，channel由调用方关闭
+     */
+    public String readMappedString(FileChannel channel) throws IOException {
+        return decodeMapped(channel).toUtf8String();
+    }
+
+    /**
+     * 通过内存映射读取整个文件的原始字节，channel由调用方关闭
+     */
+    public byte[] readMappedBytes(FileChannel channel) throws IOException {
+        return decodeMapped(channel).toByteArray();
+    }
+
+    /**
+     * 返回解码后的原始内容流，关闭返回的流会关闭raw
+     */
+    public InputStream openStored(InputStream raw) throws IOException {
+        return openStored(raw, -1);
+    }
+
+    /**
+     * storedSize为准确的文件大小时，完整性头记录的长度不符会在读取内容之前发现
+     */
+    private InputStream openStored(InputStream raw, long storedSize) throws IOException {
+        InputStream body = IntegrityHeader.unwrap(raw, storedSize);
+        PushbackInputStream in = new PushbackInputStream(body, StorageFormat.FRAME_MAGIC_SIZE);
+        byte[] head = new byte[StorageFormat.FRAME_MAGIC_SIZE];
+        int n = StorageStreams.readFully(in, head);
+        in.unread(head, 0, n);
+        InputStream decoded = StorageFormat.isFrame(head, n)
+                ? StorageFormat.openFrame(in)
+                : StorageFormat.openPayload(base64.wrapInput(in));
+        return IntegrityHeader.isChecked(body) ? new VerifyAtEnd(decoded, in) : decoded;
+    }
+
+    /**
+     * 解码器可能在内容末尾的填充或换行之前就结束，解码结束时读完剩余内容，完整性头的校验才会执行
+     */
+    private static final class VerifyAtEnd extends FilterInputStream {
+        private final InputStream body;
+
+        VerifyAtEnd(InputStream decoded, InputStream body) {
+            super(decoded);
+            this.body = body;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                drain();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                drain();
+            }
+            return n;
+        }
+
+        private void drain() throws IOException {
+            byte[] buffer = new byte[StorageStreams.BUFFER_SIZE];
+            while (body.read(buffer) != -1) {
+                // 只为触发校验
+            }
+        }
+    }
+
+    /**
+     * 按指定格式写出内容，会关闭raw
+     * binary为true时写出二进制帧，length为原始内容字节数，未知时传StorageFormat.UNKNOWN_LENGTH
+     */
+    public void writeStored(OutputStream raw, boolean binary, PayloadCodec codec, long length,
+                            PayloadWriter writer) throws IOException {
+        if (!binary) {
+            writeBase64(raw, codec, writer);
+            return;
+        }
+        OutputStream payload = StorageFormat.wrapFrameOutput(raw, codec, length);
+        writer.writeTo(payload);
+        payload.close();
+    }
+
+    /**
+     * 依次经过编码器和Base64写出内容，会关闭raw
+     * codec为null时输出与Base64.encodeToString(DEFAULT)一致的旧格式
+     */
+    public void writeBase64(OutputStream raw, PayloadCodec codec, PayloadWriter writer) throws IOException {
+        OutputStream payload = StorageFormat.wrapOutput(base64.wrapOutput(raw), codec);
+        writer.writeTo(payload);
+        // 关闭时写出压缩剩余数据和Base64末尾的填充与换行
+        payload.close();
+    }
+
+    /**
+     * 边做UTF-8编码边写出字符串，不生成完整的字节数组
+     * Writer.write(String)会把整个字符串复制到同样长度的char[]，这里按BUFFER_SIZE分段复制，
+     * 代理对跨段时由OutputStreamWriter保留前半个字符
+     */
+    public static PayloadWriter stringWriter(final String data) {
+        return out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            char[] chunk = new char[Math.min(data.length(), StorageStreams.BUFFER_SIZE)];
+            for (int off = 0; off < data.length(); off += chunk.length) {
+                int n = Math.min(chunk.length, data.length() - off);
+                data.getChars(off, off + n, chunk, 0);
+                writer.write(chunk, 0, n);
+            }
+            writer.flush();
+        };
+    }
+
+    /**
+     * 写出ByteBuffer中position到limit之间的内容，不改变buffer的position
+     */
+    public static PayloadWriter bufferWriter(final ByteBuffer data) {
+        return out -> {
+            ByteBuffer source = data.duplicate();
+            if (source.hasArray()) {
+                out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+                return;
+            }
+            // DirectByteBuffer没有底层数组，分段复制
+            byte[] chunk = new byte[Math.min(StorageStreams.BUFFER_SIZE, source.remaining())];
+            while (source.hasRemaining()) {
+                int n = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        };
+    }
+
+    /**
+     * 解码完整的存储内容，返回的ByteBuffer可能指向stored中就地解码后的区间
+     */
+    private ByteBuffer decodeBulk(byte[] stored) throws IOException {
+        int offset = 0;
+        IntegrityHeader header = IntegrityHeader.parse(stored, stored.length);
+        if (header != null) {
+            // 先校验再解码，损坏的内容不会付出解码的开销
+            header.verify(stored, IntegrityHeader.SIZE);
+            offset = IntegrityHeader.SIZE;
+        }
+        if (StorageFormat.isFrame(stored, offset, stored.length - offset)) {
+            return ByteBuffer.wrap(StorageFormat.decodeFrame(stored, offset));
+        }
+        int length;
+        try {
+            length = InPlaceBase64Decoder.decode(stored, offset, stored.length - offset);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("bad base-64", e);
+        }
+        return StorageFormat.decodePayload(stored, offset, length);
+    }
+
+    private DecodeBuffer decodeMapped(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("File too large to map: " + size);
+        }
+        // 映射在缓冲区被回收时才解除，文件已被替换时仍能读到映射时的内容
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return decodeStreaming(StorageStreams.asInputStream(mapped), size, size);
+    }
+
+    /**
+     * 边读边解码，内存占用只有解码结果本身
+     */
+    private DecodeBuffer decodeStreaming(InputStream raw, long storedSize) throws IOException {
+        // 来自MediaStore的大小可能滞后于实际文件，不能用于判断截断
+        return decodeStreaming(raw, storedSize, -1);
+    }
+
+    private DecodeBuffer decodeStreaming(InputStream raw, long storedSize, long exactSize) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(raw, IntegrityHeader.SIZE + StorageFormat.FRAME_MAGIC_SIZE);
+        byte[] head = new byte[IntegrityHeader.SIZE + StorageFormat.FRAME_MAGIC_SIZE];
+        int n = StorageStreams.readFully(in, head);
+        in.unread(head, 0, n);
+        // 大小未知时文件和MediaStore的输入流都能给出剩余字节数
+        long size = storedSize > 0 ? storedSize : in.available();
+        DecodeBuffer out = new DecodeBuffer(estimateDecodedSize(head, n, size), size);
+        try (InputStream decoded = openStored(in, exactSize)) {
+            StorageStreams.copy(decoded, out);
+        }
+        return out;
+    }
+
+    /**
+     * 按存储格式估计解码后的大小：二进制帧基本等于存储大小，Base64解码后约为存储大小的3/4
+     */
+    private static long estimateDecodedSize(byte[] head, int length, long storedSize) {
+        int offset = IntegrityHeader.isHeader(head, length) ? IntegrityHeader.SIZE : 0;
+        if (StorageFormat.isFrame(head, offset, length - offset)) {
+            return storedSize;
+        }
+        return storedSize / 4 * 3 + 3;
+    }
+
+    /**
+     * 解码结果的缓冲区，按估计的大小一次分配，估计不足时先扩大到存储大小，避免翻倍扩容多占一半内存
+     * 直接从内部数组构造字符串，不再复制出完整的字节数组
+     */
+    private static final class DecodeBuffer extends ByteArrayOutputStream {
+        private final long storedSize;
+
+        DecodeBuffer(long estimate, long storedSize) {
+            super((int) Math.max(32, Math.min(estimate, Integer.MAX_VALUE - 8)));
+            this.storedSize = storedSize;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1L);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + (long) len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        private void ensureCapacity(long needed) {
+            if (needed <= buf.length) {
+                return;
+            }
+            if (needed > Integer.MAX_VALUE - 8) {
+                throw new OutOfMemoryError("Decoded content too large: " + needed);
+            }
+            // 压缩的内容解码后可能超过存储大小，之后再翻倍
+            long capacity = buf.length < storedSize ? storedSize : buf.length * 2L;
+            buf = Arrays.copyOf(buf, (int) Math.min(Math.max(needed, capacity), Integer.MAX_VALUE - 8));
+        }
+
+        String toUtf8String() {
+            return new String(buf, 0, count, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.androidkit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 存储读写使用的流工具方法
+ */
+public final class StorageStreams {
+    static final int BUFFER_SIZE = 8192;
+
+    private StorageStreams() {
+    }
+
+    /**
+     * 按sizeHint一次分配数组并批量读取全部内容，会关闭raw
+     * sizeHint与实际大小一致时不会发生额外复制
+     */
+    public static byte[] readAll(InputStream raw, long sizeHint) throws IOException {
+        try (InputStream in = raw) {
+            byte[] buffer = new byte[(int) Math.max(0, Math.min(sizeHint, Integer.MAX_VALUE - 8))];
+            int length = readFully(in, buffer);
+            if (length < buffer.length) {
+                return Arrays.copyOf(buffer, length);
+            }
+            // 大小可能滞后于实际文件，继续读完剩余内容
+            int next = in.read();
+            if (next == -1) {
+                return buffer;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length + BUFFER_SIZE);
+            out.write(buffer, 0, length);
+            out.write(next);
+            copy(in, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * 批量读取直到填满buffer或到达流末尾，返回实际读取的字节数
+     */
+    public static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            int n = in.read(buffer, offset, buffer.length - offset);
+            if (n == -1) {
+                break;
+            }
+            offset += n;
+        }
+        return offset;
+    }
+
+    public static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * 以输入流的形式读取buffer中position到limit之间的内容，读取会推进buffer的position
+     */
+    public static InputStream asInputStream(final ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+                buffer.position(buffer.position() + skipped);
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return buffer.remaining();
+            }
+        };
+    }
+
+    /**
+     * 包装输出流，close时只flush不关闭out
+     * 用于写入后还需要fsync的场景，PayloadWriter可能会关闭传入的流
+     */
+    public static OutputStream nonClosing(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                // FilterOutputStream默认逐字节写出
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.androidkit;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 通过StorageBackend整体保存和读取存储内容，并按StorageDiagnostics的级别输出诊断日志
+ * OFF时不拼接日志字符串，也不调用StorageBackend.describe()等仅用于诊断的查询
+ */
+public final class StorageTransfer {
+
+    private StorageTransfer() {
+    }
+
+    /**
+     * 以暂存方式整体替换backend的内容，writer写出的是已按存储格式编码的内容
+     */
+    public static void replace(StorageBackend backend, PayloadWriter writer) throws IOException {
+        backend.replace(writer);
+        if (StorageDiagnostics.verbose()) {
+            StorageDiagnostics.log("暂存写入完成: " + backend.describe() + "，文件大小: " + backend.length() + " 字节");
+        } else if (StorageDiagnostics.summary()) {
+            StorageDiagnostics.log("暂存写入完成");
+        }
+    }
+
+    /**
+     * 读取并解码backend中的字符串，文件不存在时返回null
+     */
+    public static String readString(StorageBackend backend, StoragePipeline pipeline) throws IOException {
+        long size = backend.length();
+        InputStream raw = backend.openInput();
+        if (raw == null) {
+            if (StorageDiagnostics.verbose()) {
+                StorageDiagnostics.log("文件不存在: " + backend.describe());
+            }
+            return null;
+        }
+        String value = pipeline.readString(raw, size);
+        if (StorageDiagnostics.verbose()) {
+            StorageDiagnostics.log("读取完成: " + backend.describe() + "，长度: " + value.length() + " 字符");
+        } else if (StorageDiagnostics.summary()) {
+            StorageDiagnostics.log("读取完成，长度: " + value.length() + " 字符");
+        }
+        return value;
+    }
+}
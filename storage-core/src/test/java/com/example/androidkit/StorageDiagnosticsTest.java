@@ -0,0 +1,177 @@
+package com.example.androidkit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 通过StorageTransfer完整保存和读取一次：诊断级别为OFF时不执行诊断查询、不输出日志，
+ * 除结果字符串外分配的内存不超过内容大小的1.5倍；VERBOSE时确认两者都能被测到
+ */
+public class StorageDiagnosticsTest {
+    private static final double MAX_OVERHEAD = 1.5;
+    private static final int PAYLOAD_SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StoragePipeline pipeline = new StoragePipeline(JdkBase64Engine.INSTANCE);
+    private com.sun.management.ThreadMXBean threads;
+    private StorageDiagnostics.Level previous;
+    private CountingBackend backend;
+    private int logged;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation counters unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("thread allocation counters unavailable", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        previous = StorageDiagnostics.getLevel();
+        backend = new CountingBackend(new LegacyFileBackend(new File(folder.getRoot(), "sysdata.txt")));
+        StorageDiagnostics.setLogger(message -> logged++);
+    }
+
+    @After
+    public void tearDown() {
+        StorageDiagnostics.setLogger(null);
+        if (previous != null) {
+            StorageDiagnostics.setLevel(previous);
+        }
+    }
+
+    @Test
+    public void offRunsNoDiagnostics() throws Exception {
+        StorageDiagnostics.setLevel(StorageDiagnostics.Level.OFF);
+        String value = json(PAYLOAD_SIZE);
+        byte[] payload = value.getBytes(StandardCharsets.UTF_8);
+        // 预热，排除类加载等一次性分配
+        roundTrip(value);
+        new String(payload, StandardCharsets.UTF_8);
+        backend.describeCalls = 0;
+
+        long before = allocated();
+        String result = new String(payload, StandardCharsets.UTF_8);
+        long resultBytes = allocated() - before;
+
+        before = allocated();
+        String read = roundTrip(value);
+        long roundTripBytes = allocated() - before;
+
+        assertEquals(result, read);
+        assertEquals("diagnostic queries with level OFF", 0, backend.describeCalls);
+        assertEquals("log lines with level OFF", 0, logged);
+        long overhead = roundTripBytes - resultBytes;
+        assertTrue("round trip allocated " + overhead + " bytes besides the result for a " + payload.length
+                + "-byte payload", overhead <= MAX_OVERHEAD * payload.length);
+    }
+
+    @Test
+    public void verboseRunsDiagnostics() throws Exception {
+        StorageDiagnostics.setLevel(StorageDiagnostics.Level.VERBOSE);
+        String value = json(PAYLOAD_SIZE);
+        assertEquals(value, roundTrip(value));
+        assertTrue(backend.describeCalls > 0);
+        assertTrue(logged > 0);
+    }
+
+    @Test
+    public void summaryLogsWithoutQueries() throws Exception {
+        StorageDiagnostics.setLevel(StorageDiagnostics.Level.SUMMARY);
+        String value = json(1024);
+        assertEquals(value, roundTrip(value));
+        assertEquals(0, backend.describeCalls);
+        assertTrue(logged > 0);
+    }
+
+    @Test
+    public void explicitLevelWinsOverDefault() {
+        StorageDiagnostics.setLevel(StorageDiagnostics.Level.SUMMARY);
+        StorageDiagnostics.setDefaultLevel(StorageDiagnostics.Level.VERBOSE);
+        try {
+            assertEquals(StorageDiagnostics.Level.SUMMARY, StorageDiagnostics.getLevel());
+            assertTrue(StorageDiagnostics.summary());
+            assertFalse(StorageDiagnostics.verbose());
+        } finally {
+            StorageDiagnostics.setDefaultLevel(StorageDiagnostics.Level.OFF);
+        }
+    }
+
+    private String roundTrip(String value) throws IOException {
+        StorageTransfer.replace(backend, out -> pipeline.writeStored(out, false, null,
+                StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(value)));
+        return StorageTransfer.readString(backend, pipeline);
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\",\"active\":true},");
+        }
+        sb.setCharAt(sb.length() - 1, ']');
+        return sb.toString();
+    }
+
+    /**
+     * 统计仅用于诊断的describe()调用次数，其他操作直接转发
+     */
+    private static final class CountingBackend implements StorageBackend {
+        private final StorageBackend delegate;
+        int describeCalls;
+
+        CountingBackend(StorageBackend delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public InputStream openInput() throws IOException {
+            return delegate.openInput();
+        }
+
+        @Override
+        public OutputStream openOutput(boolean append) throws IOException {
+            return delegate.openOutput(append);
+        }
+
+        @Override
+        public void replace(PayloadWriter writer) throws IOException {
+            delegate.replace(writer);
+        }
+
+        @Override
+        public long length() {
+            return delegate.length();
+        }
+
+        @Override
+        public boolean delete() {
+            return delegate.delete();
+        }
+
+        @Override
+        public String describe() {
+            describeCalls++;
+            return delegate.describe();
+        }
+    }
+}
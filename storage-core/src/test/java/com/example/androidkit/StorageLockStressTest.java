@@ -0,0 +1,123 @@
+package com.example.androidkit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多个写入线程原地覆盖同一个文件，多个读取线程同时读取，
+ * 持有StorageLock时读取方只能看到某一次完整的写入，不会读到截断或混合的内容
+ */
+public class StorageLockStressTest {
+    private static final int WRITERS = 3;
+    private static final int READERS = 5;
+    private static final int VALUE_LENGTH = 200_000;
+    private static final long DURATION_MS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StoragePipeline pipeline = new StoragePipeline(JdkBase64Engine.INSTANCE);
+
+    @Test
+    public void readersNeverSeeTornWrites() throws Exception {
+        File dir = folder.getRoot();
+        final LegacyFileBackend backend = new LegacyFileBackend(new File(dir, "sysdata.txt"));
+        final StorageLock lock = new StorageLock(new File(dir, "syskit.lock"));
+        write(backend, repeat('A'));
+
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicInteger torn = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            final String value = repeat((char) ('B' + w));
+            tasks.add(executor.submit(() -> {
+                while (!stop.get()) {
+                    lock.lockWrite();
+                    try {
+                        write(backend, value);
+                        writes.incrementAndGet();
+                    } finally {
+                        lock.unlockWrite();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            tasks.add(executor.submit(() -> {
+                while (!stop.get()) {
+                    lock.lockRead();
+                    try {
+                        String value = pipeline.readString(backend.openInput(), backend.length());
+                        reads.incrementAndGet();
+                        if (!isUniform(value)) {
+                            torn.incrementAndGet();
+                        }
+                    } finally {
+                        lock.unlockRead();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        Thread.sleep(DURATION_MS);
+        stop.set(true);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        for (Future<?> task : tasks) {
+            // 读写过程中的异常在这里重新抛出
+            task.get();
+        }
+
+        assertTrue("no writes completed", writes.get() > 0);
+        assertTrue("no reads completed", reads.get() > 0);
+        assertEquals("torn reads", 0, torn.get());
+        assertNull(lock.getLastFailure());
+    }
+
+    private void write(StorageBackend backend, String value) throws Exception {
+        try (OutputStream out = backend.openOutput(false)) {
+            pipeline.writeStored(out, false, null, StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(value));
+        }
+    }
+
+    private static String repeat(char c) {
+        StringBuilder sb = new StringBuilder(VALUE_LENGTH);
+        for (int i = 0; i < VALUE_LENGTH; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isUniform(String value) {
+        if (value.length() != VALUE_LENGTH) {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            if (value.charAt(i) != value.charAt(0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
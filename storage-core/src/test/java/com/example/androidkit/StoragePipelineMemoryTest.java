@@ -0,0 +1,90 @@
+package com.example.androidkit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * 读取字符串时除结果字符串本身外，堆上分配的内存不超过内容大小的1.5倍
+ * 用线程累计分配的字节数衡量，它不小于读取过程中的峰值占用
+ */
+public class StoragePipelineMemoryTest {
+    private static final double MAX_OVERHEAD = 1.5;
+
+    private final StoragePipeline pipeline = new StoragePipeline(JdkBase64Engine.INSTANCE);
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation counters unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue("thread allocation counters unavailable", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void bulkReadStaysWithinBound() throws Exception {
+        // 不超过BULK_READ_LIMIT，一次读入后就地解码
+        assertReadWithinBound(2 * 1024 * 1024, true);
+    }
+
+    @Test
+    public void streamingReadStaysWithinBound() throws Exception {
+        assertReadWithinBound(8 * 1024 * 1024, true);
+    }
+
+    @Test
+    public void streamingReadWithUnknownSizeStaysWithinBound() throws Exception {
+        assertReadWithinBound(8 * 1024 * 1024, false);
+    }
+
+    private void assertReadWithinBound(int payloadSize, boolean sizeKnown) throws Exception {
+        String value = json(payloadSize);
+        byte[] payload = value.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        pipeline.writeStored(out, false, null, StorageFormat.UNKNOWN_LENGTH, StoragePipeline.stringWriter(value));
+        byte[] stored = out.toByteArray();
+        long storedSize = sizeKnown ? stored.length : 0;
+
+        // 预热，排除类加载等一次性分配
+        pipeline.readString(new ByteArrayInputStream(stored), storedSize);
+        new String(payload, StandardCharsets.UTF_8);
+
+        long before = allocated();
+        String result = new String(payload, StandardCharsets.UTF_8);
+        long resultBytes = allocated() - before;
+
+        ByteArrayInputStream in = new ByteArrayInputStream(stored);
+        before = allocated();
+        String read = pipeline.readString(in, storedSize);
+        long readBytes = allocated() - before;
+
+        assertEquals(result, read);
+        long overhead = readBytes - resultBytes;
+        assertTrue("read allocated " + overhead + " bytes besides the result for a " + payload.length
+                + "-byte payload", overhead <= MAX_OVERHEAD * payload.length);
+    }
+
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static String json(int size) {
+        StringBuilder sb = new StringBuilder(size + 64);
+        sb.append('[');
+        for (int i = 0; sb.length() < size; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\",\"active\":true},");
+        }
+        sb.setCharAt(sb.length() - 1, ']');
+        return sb.toString();
+    }
+}